@@ -0,0 +1,49 @@
+package jackc.bench;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CompileBenchmark {
+    @Param({"Square", "Misc", "Prog", "synthetic-1000", "synthetic-10000", "synthetic-50000"})
+    public String input;
+
+    @Param({"", "-O", "-O --whole-program"})
+    public String options;
+
+    private List<String> sources;
+    private String[] flags;
+    private int lines;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Lines {
+        public long lines;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lines = 0;
+        }
+    }
+
+    @Setup
+    public void load() throws Throwable {
+        sources = Corpus.load(input);
+        flags = options.isEmpty() ? new String[0] : options.split(" ");
+        lines = Corpus.lines(sources);
+        Jack.compile(sources, flags);
+    }
+
+    @Benchmark
+    public List<?> compile(Lines counter) throws Throwable {
+        counter.lines += lines;
+        return Jack.compile(sources, flags);
+    }
+}
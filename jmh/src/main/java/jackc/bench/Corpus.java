@@ -0,0 +1,76 @@
+package jackc.bench;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+/**
+ * Benchmark inputs. A name is either a program directory under corpus/ (one or more .jack classes) or
+ * synthetic-N, a generated class of about N lines.
+ */
+final class Corpus {
+    static final String DIRECTORY = "corpus", SYNTHETIC = "synthetic-";
+
+    private Corpus() {
+    }
+
+    static List<String> load(String input) throws IOException {
+        if (input.startsWith(SYNTHETIC)) {
+            int lines = Integer.parseInt(input.substring(SYNTHETIC.length()));
+            return Collections.singletonList(synthetic("Synthetic" + lines, lines));
+        }
+        File dir = new File(DIRECTORY, input);
+        File[] files = dir.listFiles();
+        if (files == null) throw new FileNotFoundException(dir.getAbsolutePath());
+        Arrays.sort(files);
+        List<String> sources = new ArrayList<String>();
+        for (File f: files) {
+            if (f.getName().endsWith(".jack")) sources.add(new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8));
+        }
+        if (sources.isEmpty()) throw new FileNotFoundException("no .jack files in " + dir.getAbsolutePath());
+        return sources;
+    }
+
+    static int lines(List<String> sources) {
+        int lines = 0;
+        for (String source: sources) {
+            for (int i = 0; i < source.length(); i++) {
+                if (source.charAt(i) == '\n') lines++;
+            }
+        }
+        return lines;
+    }
+
+    static String synthetic(String className, int lines) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("class ").append(className).append(" {\n");
+        sb.append("    field int x, y, size;\n    field Array cells;\n    static int count;\n\n");
+        sb.append("    constructor ").append(className).append(" new(int ax, int ay) {\n");
+        sb.append("        let x = ax;\n        let y = ay;\n        let size = 16;\n");
+        sb.append("        let cells = Array.new(size);\n        return this;\n    }\n\n");
+        int n = 0, written = 0, counted = 0;
+        while (written < lines) {
+            sb.append("    method int step").append(n).append("(int dx, int dy) {\n");
+            sb.append("        var int i, sum;\n        var String label;\n");
+            sb.append("        let label = \"step").append(n).append("\";\n");
+            sb.append("        let i = 0;\n        let sum = 0;\n");
+            sb.append("        while (i < size) {\n");
+            sb.append("            let cells[i] = (x + i) * 2 - (y / 4);\n");
+            sb.append("            if ((cells[i] > dx) & ~(cells[i] = dy)) {\n");
+            sb.append("                let sum = sum + cells[i];\n");
+            sb.append("            } else {\n");
+            sb.append("                let sum = sum - 1;\n            }\n");
+            sb.append("            let i = i + 1;\n        }\n");
+            sb.append("        do Output.printString(label);\n");
+            if (n > 0) sb.append("        let sum = sum + step").append(n - 1).append("(dx, dy);\n");
+            sb.append("        let count = count + 1;\n        return sum;\n    }\n\n");
+            for (; counted < sb.length(); counted++) {
+                if (sb.charAt(counted) == '\n') written++;
+            }
+            n++;
+        }
+        sb.append("}\n");
+        return sb.toString();
+    }
+}
@@ -0,0 +1,99 @@
+package jackc.bench;
+
+import java.lang.invoke.*;
+import java.lang.reflect.*;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+
+/**
+ * The compiler lives in the unnamed package, which JMH benchmarks cannot import, so they reach it through
+ * method handles. The handles are constants, so the JIT inlines them like direct calls.
+ */
+final class Jack {
+    private static final MethodHandle NEW_TOKENIZER, ADVANCE, TOKEN_TYPE, COMPILE, OK, ERROR, INSTRUCTIONS, WRITE_TO,
+            NEW_SYMBOL_TABLE, START_SUBROUTINE, DEFINE, HANDLE_OF;
+    static final Object ARGUMENT, LOCAL, STATIC, THIS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            Class<?> tokenizer = Class.forName("JackTokenizer"), compiler = Class.forName("JackCompiler");
+            Class<?> compiled = Class.forName("CompiledClass"), table = Class.forName("SymbolTable");
+            Class<?> segment = Class.forName("Segment");
+            NEW_TOKENIZER = lookup.unreflectConstructor(tokenizer.getConstructor(CharSequence.class));
+            ADVANCE = lookup.unreflect(tokenizer.getMethod("advance"));
+            TOKEN_TYPE = lookup.unreflect(tokenizer.getMethod("tokenType"));
+            COMPILE = lookup.unreflect(compiler.getMethod("compile", List.class, String[].class));
+            OK = lookup.unreflect(compiled.getMethod("ok"));
+            ERROR = lookup.unreflect(compiled.getMethod("error"));
+            INSTRUCTIONS = lookup.unreflect(compiled.getMethod("instructionCount"));
+            WRITE_TO = lookup.unreflect(compiled.getMethod("writeTo", WritableByteChannel.class));
+            NEW_SYMBOL_TABLE = lookup.unreflectConstructor(accessible(table.getDeclaredConstructor()));
+            START_SUBROUTINE = lookup.unreflect(accessible(table.getDeclaredMethod("startSubroutin")));
+            DEFINE = lookup.unreflect(accessible(table.getDeclaredMethod("define", String.class, String.class, segment)));
+            HANDLE_OF = lookup.unreflect(accessible(table.getDeclaredMethod("handleOf", String.class)));
+            ARGUMENT = segment(segment, "ARGUMENT");
+            LOCAL = segment(segment, "LOCAL");
+            STATIC = segment(segment, "STATIC");
+            THIS = segment(segment, "THIS");
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Jack() {
+    }
+
+    private static <T extends AccessibleObject> T accessible(T member) {
+        member.setAccessible(true);
+        return member;
+    }
+
+    private static Object segment(Class<?> segment, String name) throws NoSuchFieldException {
+        for (Object constant: segment.getEnumConstants()) {
+            if (((Enum<?>) constant).name().equals(name)) return constant;
+        }
+        throw new NoSuchFieldException(segment.getName() + "." + name);
+    }
+
+    static Object tokenizer(CharSequence source) throws Throwable {
+        return NEW_TOKENIZER.invoke(source);
+    }
+
+    static boolean advance(Object tokenizer) throws Throwable {
+        ADVANCE.invoke(tokenizer);
+        return TOKEN_TYPE.invoke(tokenizer) != null;
+    }
+
+    static List<?> compile(List<String> sources, String... options) throws Throwable {
+        List<?> classes = (List<?>) COMPILE.invoke(sources, options);
+        for (Object c: classes) {
+            if (!(boolean) OK.invoke(c)) throw new IllegalStateException((String) ERROR.invoke(c));
+        }
+        return classes;
+    }
+
+    static int instructionCount(Object compiled) throws Throwable {
+        return (int) INSTRUCTIONS.invoke(compiled);
+    }
+
+    static void writeTo(Object compiled, WritableByteChannel out) throws Throwable {
+        WRITE_TO.invoke(compiled, out);
+    }
+
+    static Object symbolTable() throws Throwable {
+        return NEW_SYMBOL_TABLE.invoke();
+    }
+
+    static void startSubroutine(Object table) throws Throwable {
+        START_SUBROUTINE.invoke(table);
+    }
+
+    static void define(Object table, String name, String type, Object segment) throws Throwable {
+        DEFINE.invoke(table, name, type, segment);
+    }
+
+    static int handleOf(Object table, String name) throws Throwable {
+        return (int) HANDLE_OF.invoke(table, name);
+    }
+}
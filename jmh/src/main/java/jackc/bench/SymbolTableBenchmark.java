@@ -0,0 +1,49 @@
+package jackc.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SymbolTableBenchmark {
+    @Param({"16", "64"})
+    public int classVars;
+
+    private String[] names;
+    private Object table;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Lookups {
+        public long lookups;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lookups = 0;
+        }
+    }
+
+    @Setup
+    public void define() throws Throwable {
+        names = new String[classVars + classVars / 2];
+        for (int i = 0; i < names.length; i++) names[i] = "name" + i;
+        table = Jack.symbolTable();
+        for (int i = 0; i < classVars; i++) Jack.define(table, names[i], "int", i % 2 == 0 ? Jack.THIS : Jack.STATIC);
+    }
+
+    @Benchmark
+    public int subroutine(Lookups counter) throws Throwable {
+        Jack.startSubroutine(table);
+        for (int i = classVars; i < names.length; i++) {
+            Jack.define(table, names[i], "int", i % 4 == 0 ? Jack.ARGUMENT : Jack.LOCAL);
+        }
+        int sum = 0;
+        for (String name: names) sum += Jack.handleOf(table, name);
+        counter.lookups += names.length;
+        return sum;
+    }
+}
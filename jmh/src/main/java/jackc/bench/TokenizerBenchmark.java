@@ -0,0 +1,46 @@
+package jackc.bench;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenizerBenchmark {
+    @Param({"Square", "Misc", "Prog", "synthetic-1000", "synthetic-10000", "synthetic-50000"})
+    public String input;
+
+    private List<String> sources;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Setup
+    public void load() throws IOException {
+        sources = Corpus.load(input);
+    }
+
+    @Benchmark
+    public int advance(Tokens counter) throws Throwable {
+        int tokens = 0;
+        for (String source: sources) {
+            Object jt = Jack.tokenizer(source);
+            while (Jack.advance(jt)) tokens++;
+        }
+        counter.tokens += tokens;
+        return tokens;
+    }
+}
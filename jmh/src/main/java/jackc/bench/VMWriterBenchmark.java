@@ -0,0 +1,61 @@
+package jackc.bench;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class VMWriterBenchmark {
+    @Param({"Square", "Misc", "Prog", "synthetic-1000", "synthetic-10000", "synthetic-50000"})
+    public String input;
+
+    private List<?> classes;
+    private int instructions;
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Instructions {
+        public long instructions;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            instructions = 0;
+        }
+    }
+
+    @Setup
+    public void compile() throws Throwable {
+        classes = Jack.compile(Corpus.load(input));
+        instructions = 0;
+        for (Object c: classes) instructions += Jack.instructionCount(c);
+    }
+
+    @Benchmark
+    public void write(Instructions counter, final Blackhole bh) throws Throwable {
+        WritableByteChannel out = new WritableByteChannel() {
+            public int write(ByteBuffer src) {
+                int n = src.remaining();
+                if (n > 0) bh.consume(src.get(src.limit() - 1));
+                src.position(src.limit());
+                return n;
+            }
+
+            public boolean isOpen() {
+                return true;
+            }
+
+            public void close() {
+            }
+        };
+        for (Object c: classes) Jack.writeTo(c, out);
+        counter.instructions += instructions;
+    }
+}
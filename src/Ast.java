@@ -0,0 +1,114 @@
+import java.util.*;
+
+class Ast {
+    static final int NONE = -1;
+
+    Node[] kinds;
+    String[] names, types;
+    int[] a, ref, pos, first, next;
+    int size;
+    private int[] last;
+
+    Ast(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kinds = new Node[capacity];
+        names = new String[capacity];
+        types = new String[capacity];
+        a = new int[capacity];
+        ref = new int[capacity];
+        pos = new int[capacity];
+        first = new int[capacity];
+        next = new int[capacity];
+        last = new int[capacity];
+        size = 0;
+    }
+
+    int add(Node kind, int a) {
+        if (size == kinds.length) grow();
+        int n = size++;
+        kinds[n] = kind;
+        this.a[n] = a;
+        names[n] = types[n] = null;
+        ref[n] = NONE;
+        pos[n] = 0;
+        first[n] = next[n] = last[n] = NONE;
+        return n;
+    }
+
+    int add(Node kind, int a, int child) {
+        int n = add(kind, a);
+        append(n, child);
+        return n;
+    }
+
+    int add(Node kind, int a, int left, int right) {
+        int n = add(kind, a, left);
+        append(n, right);
+        return n;
+    }
+
+    int add(Node kind, String name, String type) {
+        int n = add(kind, 0);
+        names[n] = name;
+        types[n] = type;
+        return n;
+    }
+
+    void append(int parent, int child) {
+        if (child == NONE) return;
+        if (first[parent] == NONE) {
+            first[parent] = child;
+        } else {
+            next[last[parent]] = child;
+        }
+        last[parent] = child;
+    }
+
+    static int position(int line, int column) {
+        return line << 10 | Math.min(column, 1023);
+    }
+
+    static int line(int position) {
+        return position >>> 10;
+    }
+
+    static int column(int position) {
+        return position & 1023;
+    }
+
+    int second(int n) {
+        return next[first[n]];
+    }
+
+    int count(int n, Node kind) {
+        int count = 0;
+        for (int c = first[n]; c != NONE; c = next[c]) {
+            if (kinds[c] == kind) count++;
+        }
+        return count;
+    }
+
+    void become(int n, int other) {
+        kinds[n] = kinds[other];
+        names[n] = names[other];
+        types[n] = types[other];
+        a[n] = a[other];
+        ref[n] = ref[other];
+        pos[n] = pos[other];
+        first[n] = first[other];
+        last[n] = last[other];
+    }
+
+    private void grow() {
+        int n = kinds.length * 2;
+        kinds = Arrays.copyOf(kinds, n);
+        names = Arrays.copyOf(names, n);
+        types = Arrays.copyOf(types, n);
+        a = Arrays.copyOf(a, n);
+        ref = Arrays.copyOf(ref, n);
+        pos = Arrays.copyOf(pos, n);
+        first = Arrays.copyOf(first, n);
+        next = Arrays.copyOf(next, n);
+        last = Arrays.copyOf(last, n);
+    }
+}
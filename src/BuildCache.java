@@ -0,0 +1,171 @@
+import java.io.*;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+
+class BuildCache {
+    static final String MANIFEST = ".jackc-manifest";
+    private static final String HEADER = "jackc-manifest 2";
+
+    private final File dir, manifest;
+    private final String fingerprint, suffix;
+    private final Map<String, Entry> entries = new TreeMap<String, Entry>();
+    private final Map<String, String> sourceHashes = new HashMap<String, String>();
+    boolean pruned;
+
+    BuildCache(File dir, String fingerprint, String suffix) {
+        this.dir = dir;
+        this.fingerprint = Build.BUILD + " " + fingerprint;
+        this.suffix = suffix;
+        manifest = new File(dir, MANIFEST);
+        load();
+    }
+
+    private void load() {
+        if (!manifest.isFile()) return;
+        try (BufferedReader r = Files.newBufferedReader(manifest.toPath(), StandardCharsets.UTF_8)) {
+            if (!(HEADER + " " + fingerprint).equals(r.readLine())) return;
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] f = line.split(" ");
+                if (f.length == 4) entries.put(f[0], new Entry(f[1], f[2], f[3]));
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+    }
+
+    List<File> staleSources(List<File> sources, boolean wholeDirectory) throws IOException {
+        List<File> stale = new ArrayList<File>();
+        for (File f: sources) {
+            String hash = hash(f);
+            sourceHashes.put(f.getName(), hash);
+            Entry e = entries.get(f.getName());
+            File output = JackCompiler.outputFile(f, suffix);
+            if (e == null || !e.sourceHash.equals(hash) || !e.outputHash.equals(hash(output))
+                    || !e.mapHash.equals(hash(mapFile(output)))) {
+                stale.add(f);
+            }
+        }
+        if (wholeDirectory) reuseRenamedAndPruneDeleted(stale);
+        return stale;
+    }
+
+    private void reuseRenamedAndPruneDeleted(List<File> stale) throws IOException {
+        Map<String, String> deleted = new HashMap<String, String>();
+        for (String name: new ArrayList<String>(entries.keySet())) {
+            if (!sourceHashes.containsKey(name)) deleted.put(entries.get(name).sourceHash, name);
+        }
+        pruned = !deleted.isEmpty();
+        for (Iterator<File> it = stale.iterator(); it.hasNext(); ) {
+            File f = it.next();
+            String oldName = deleted.remove(sourceHashes.get(f.getName()));
+            if (oldName == null) continue;
+            Entry old = entries.get(oldName);
+            File oldOutput = JackCompiler.outputFile(new File(dir, oldName), suffix);
+            if (old.mapHash.equals("-") && old.outputHash.equals(hash(oldOutput))) {
+                entries.remove(oldName);
+                Files.move(oldOutput.toPath(), JackCompiler.outputFile(f, suffix).toPath(), StandardCopyOption.REPLACE_EXISTING);
+                entries.put(f.getName(), old);
+                it.remove();
+            } else {
+                deleted.put(old.sourceHash, oldName);
+            }
+        }
+        for (String name: deleted.values()) {
+            Entry old = entries.remove(name);
+            File oldOutput = JackCompiler.outputFile(new File(dir, name), suffix);
+            if (old.outputHash.equals(hash(oldOutput))) oldOutput.delete();
+            if (old.mapHash.equals(hash(mapFile(oldOutput)))) mapFile(oldOutput).delete();
+        }
+    }
+
+    private static File mapFile(File output) {
+        return new File(output.getPath() + ".map");
+    }
+
+    void record(File source) throws IOException {
+        File output = JackCompiler.outputFile(source, suffix);
+        entries.put(source.getName(), new Entry(sourceHashes.get(source.getName()), hash(output), hash(mapFile(output))));
+    }
+
+    void forget(File source) {
+        entries.remove(source.getName());
+    }
+
+    void save() throws IOException {
+        Path tmp = Files.createTempFile(dir.toPath(), MANIFEST, ".tmp");
+        try {
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(HEADER + " " + fingerprint + "\n");
+                for (Map.Entry<String, Entry> e: entries.entrySet()) {
+                    Entry entry = e.getValue();
+                    w.write(e.getKey() + " " + entry.sourceHash + " " + entry.outputHash + " " + entry.mapHash + "\n");
+                }
+            }
+            Files.move(tmp, manifest.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    static String hash(File f) throws IOException {
+        if (!f.isFile()) return "-";
+        return hash(Files.readAllBytes(f.toPath()));
+    }
+
+    static String hash(byte[] data) {
+        return hex(digest().digest(data));
+    }
+
+    private static MessageDigest digest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String compilerBuild() {
+        try {
+            File location = new File(JackCompiler.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+            if (location.isFile()) return hash(location);
+            File[] classes = location.listFiles();
+            if (classes == null) return JackCompiler.VERSION;
+            Arrays.sort(classes);
+            MessageDigest md = digest();
+            for (File f: classes) {
+                if (!f.getName().endsWith(".class")) continue;
+                md.update(f.getName().getBytes(StandardCharsets.UTF_8));
+                md.update(Files.readAllBytes(f.toPath()));
+            }
+            return hex(md.digest());
+        } catch (IOException | URISyntaxException | RuntimeException e) {
+            return JackCompiler.VERSION;
+        }
+    }
+
+    private static String hex(byte[] digest) {
+        StringBuilder sb = new StringBuilder(digest.length * 2);
+        for (byte b: digest) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    private static final class Build {
+        static final String BUILD = compilerBuild();
+    }
+
+    private static class Entry {
+        final String sourceHash, outputHash, mapHash;
+
+        Entry(String sourceHash, String outputHash, String mapHash) {
+            this.sourceHash = sourceHash;
+            this.outputHash = outputHash;
+            this.mapHash = mapHash;
+        }
+    }
+}
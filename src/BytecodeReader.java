@@ -0,0 +1,129 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class BytecodeReader {
+    private static final Segment[] SEGMENTS = Segment.values();
+    private static final Command[] COMMANDS = Command.values();
+
+    private final byte[] data;
+    private int pos;
+
+    private BytecodeReader(byte[] data) {
+        this.data = data;
+    }
+
+    static VMCode read(byte[] data) {
+        return new BytecodeReader(data).decode();
+    }
+
+    private VMCode decode() {
+        for (byte b: BytecodeWriter.MAGIC) {
+            if (next() != b) throw new IllegalArgumentException("not a binary VM file");
+        }
+        int version = varint();
+        if (version != BytecodeWriter.VERSION) throw new IllegalArgumentException("unsupported version " + version);
+        String[] names = new String[count("name")];
+        for (int i = 0; i < names.length; i++) {
+            int length = count("name byte");
+            names[i] = new String(data, pos, length, StandardCharsets.UTF_8);
+            pos += length;
+        }
+        int count = count("instruction");
+        VMCode code = new VMCode(count);
+        int function = 0;
+        for (int i = 0; i < count; i++) {
+            int op = next() & 0xff;
+            if (op < BytecodeWriter.POP) {
+                code.writePush(segment(op - BytecodeWriter.PUSH), zigzag(varint()));
+            } else if (op < BytecodeWriter.ARITHMETIC) {
+                code.writePop(segment(op - BytecodeWriter.POP), zigzag(varint()));
+            } else if (op < BytecodeWriter.ARITHMETIC + COMMANDS.length) {
+                code.writeArithmetic(COMMANDS[op - BytecodeWriter.ARITHMETIC]);
+            } else {
+                switch (op) {
+                    case BytecodeWriter.LABEL:
+                        code.writeLabel(label(i - function));
+                        break;
+                    case BytecodeWriter.GOTO:
+                        code.writeGoto(label(varint()));
+                        break;
+                    case BytecodeWriter.IF_GOTO:
+                        code.writeIf(label(varint()));
+                        break;
+                    case BytecodeWriter.CALL:
+                        code.writeCall(name(names, varint()), varint());
+                        break;
+                    case BytecodeWriter.FUNCTION:
+                        function = i;
+                        code.writeFunction(name(names, varint()), varint());
+                        break;
+                    case BytecodeWriter.RETURN:
+                        code.writeReturn();
+                        break;
+                    default:
+                        throw new IllegalArgumentException("bad opcode " + op + " at byte " + (pos - 1));
+                }
+            }
+        }
+        return code;
+    }
+
+    private static String label(int offset) {
+        return "L" + offset;
+    }
+
+    private static String name(String[] names, int index) {
+        if (index < 0 || index >= names.length) throw new IllegalArgumentException("bad name index " + index);
+        return names[index];
+    }
+
+    private static Segment segment(int ordinal) {
+        if (ordinal >= SEGMENTS.length) throw new IllegalArgumentException("bad segment " + ordinal);
+        return SEGMENTS[ordinal];
+    }
+
+    private static int zigzag(int n) {
+        return n >>> 1 ^ -(n & 1);
+    }
+
+    private byte next() {
+        if (pos >= data.length) throw new IllegalArgumentException("unexpected end of file");
+        return data[pos++];
+    }
+
+    private int count(String what) {
+        int n = varint();
+        if (n < 0 || n > data.length - pos) throw new IllegalArgumentException("bad " + what + " count " + n + " at byte " + pos);
+        return n;
+    }
+
+    private int varint() {
+        int n = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = next();
+            n |= (b & 0x7f) << shift;
+            if (b >= 0) return n;
+        }
+        throw new IllegalArgumentException("bad varint at byte " + pos);
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: BytecodeReader <file.vmb>");
+            System.exit(2);
+        }
+        VMCode code;
+        try {
+            code = read(Files.readAllBytes(Paths.get(args[0])));
+        } catch (IllegalArgumentException e) {
+            System.err.println(args[0] + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        VMWriter vmw = new VMWriter(new FileOutputStream(FileDescriptor.out).getChannel());
+        code.writeTo(vmw);
+        vmw.close();
+    }
+}
@@ -0,0 +1,125 @@
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+class BytecodeWriter {
+    static final byte[] MAGIC = {'J', 'V', 'M', 'B'};
+    static final int VERSION = 1;
+    static final int PUSH = 0x00, POP = 0x08, ARITHMETIC = 0x10, LABEL = 0x20, GOTO = 0x21, IF_GOTO = 0x22,
+            CALL = 0x23, FUNCTION = 0x24, RETURN = 0x25;
+
+    private byte[] buf = new byte[1 << 12];
+    private int size;
+
+    static void write(VMCode code, String fileName) {
+        try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            write(code, ch);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static void write(VMCode code, WritableByteChannel out) {
+        BytecodeWriter w = new BytecodeWriter();
+        w.encode(code);
+        try {
+            ByteBuffer bb = ByteBuffer.wrap(w.buf, 0, w.size);
+            while (bb.hasRemaining()) out.write(bb);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void encode(VMCode code) {
+        Map<String, Integer> names = new LinkedHashMap<String, Integer>();
+        for (int i = 0; i < code.size; i++) {
+            if ((code.ops[i] == Op.CALL || code.ops[i] == Op.FUNCTION) && !names.containsKey(code.names[i])) {
+                names.put(code.names[i], names.size());
+            }
+        }
+        put(MAGIC);
+        putVarint(VERSION);
+        putVarint(names.size());
+        for (String name: names.keySet()) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            putVarint(bytes.length);
+            put(bytes);
+        }
+        putVarint(code.size);
+        Map<String, Integer> offsets = new HashMap<String, Integer>();
+        for (int start = 0; start < code.size; ) {
+            int end = code.functionEnd(start);
+            offsets.clear();
+            for (int i = start; i < end; i++) {
+                if (code.ops[i] == Op.LABEL) offsets.put(code.names[i], i - start);
+            }
+            for (int i = start; i < end; i++) {
+                encode(code, i, names, offsets);
+            }
+            start = end;
+        }
+    }
+
+    private void encode(VMCode code, int i, Map<String, Integer> names, Map<String, Integer> offsets) {
+        switch (code.ops[i]) {
+            case PUSH:
+                put(PUSH + code.segments[i].ordinal());
+                putVarint(code.args[i] << 1 ^ code.args[i] >> 31);
+                break;
+            case POP:
+                put(POP + code.segments[i].ordinal());
+                putVarint(code.args[i] << 1 ^ code.args[i] >> 31);
+                break;
+            case ARITHMETIC:
+                put(ARITHMETIC + code.commands[i].ordinal());
+                break;
+            case LABEL:
+                put(LABEL);
+                break;
+            case GOTO:
+            case IF_GOTO:
+                Integer target = offsets.get(code.names[i]);
+                if (target == null) throw new IllegalStateException("undefined label " + code.names[i]);
+                put(code.ops[i] == Op.GOTO ? GOTO : IF_GOTO);
+                putVarint(target);
+                break;
+            case CALL:
+            case FUNCTION:
+                put(code.ops[i] == Op.CALL ? CALL : FUNCTION);
+                putVarint(names.get(code.names[i]));
+                putVarint(code.args[i]);
+                break;
+            case RETURN:
+                put(RETURN);
+                break;
+        }
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) buf = Arrays.copyOf(buf, Math.max(buf.length * 2, size + n));
+    }
+
+    private void put(int b) {
+        ensure(1);
+        buf[size++] = (byte) b;
+    }
+
+    private void put(byte[] bytes) {
+        ensure(bytes.length);
+        System.arraycopy(bytes, 0, buf, size, bytes.length);
+        size += bytes.length;
+    }
+
+    private void putVarint(int n) {
+        ensure(5);
+        while ((n & ~0x7f) != 0) {
+            buf[size++] = (byte) (n & 0x7f | 0x80);
+            n >>>= 7;
+        }
+        buf[size++] = (byte) n;
+    }
+}
@@ -0,0 +1,341 @@
+import java.util.*;
+
+class CodeGenerator {
+    private static final int IF_TRUE = 0, IF_FALSE = 1, WHILE_EXP = 2, WHILE_END = 3, STRING_READY = 4;
+    private static final String[] PREFIXES = {"IF_TRUE", "IF_FALSE", "WHILE_EXP", "WHILE_END", "STRING_READY", "L"};
+    private static final String[][] LABELS = new String[PREFIXES.length][64];
+
+    static {
+        for (int p = 0; p < PREFIXES.length; p++) {
+            for (int n = 0; n < LABELS[p].length; n++) LABELS[p][n] = PREFIXES[p] + n;
+        }
+    }
+
+    private final Ast ast;
+    private final VMCode vmw;
+    private final String className;
+    private final boolean poolStrings, optimize;
+    private final Map<String, Integer> stringPool;
+    private int fieldNum, staticNum, labelNum;
+    private boolean voidSubroutine;
+
+    private CodeGenerator(Ast ast, int root, Options options) {
+        this.ast = ast;
+        vmw = new VMCode(ast.size + ast.size / 4);
+        className = ast.names[root];
+        poolStrings = options.poolStrings;
+        optimize = options.optimize;
+        stringPool = new LinkedHashMap<String, Integer>();
+        fieldNum = ast.count(root, Node.FIELD_VAR);
+        staticNum = ast.count(root, Node.STATIC_VAR);
+    }
+
+    static VMCode generate(Ast ast, int root, Options options) {
+        CodeGenerator g = new CodeGenerator(ast, root, options);
+        for (int n = ast.first[root]; n != Ast.NONE; n = ast.next[n]) {
+            Node kind = ast.kinds[n];
+            if (kind == Node.CONSTRUCTOR || kind == Node.FUNCTION || kind == Node.METHOD) g.writeSubroutine(n);
+        }
+        g.vmw.position = ast.pos[root];
+        if (!g.stringPool.isEmpty()) g.writeStringPool();
+        return g.vmw;
+    }
+
+    private void writeSubroutine(int sub) {
+        voidSubroutine = ast.types[sub].equals("void");
+        labelNum = -1;
+        vmw.position = ast.pos[sub];
+        vmw.writeFunction(className + "." + ast.names[sub], ast.count(sub, Node.LOCAL_VAR));
+        if (ast.kinds[sub] == Node.CONSTRUCTOR) {
+            vmw.writePush(Segment.CONSTANT, fieldNum);
+            vmw.writeCall("Memory.alloc", 1);
+            vmw.writePop(Segment.POINTER, 0);
+        } else if (ast.kinds[sub] == Node.METHOD) {
+            vmw.writePush(Segment.ARGUMENT, 0);
+            vmw.writePop(Segment.POINTER, 0);
+        }
+        for (int n = ast.first[sub]; n != Ast.NONE; n = ast.next[n]) {
+            if (ast.kinds[n] == Node.BLOCK) writeStatements(n);
+        }
+    }
+
+    private void writeStatements(int block) {
+        for (int n = ast.first[block]; n != Ast.NONE; n = ast.next[n]) {
+            vmw.position = ast.pos[n];
+            switch (ast.kinds[n]) {
+                case LET:
+                    writeExpression(ast.first[n]);
+                    writePop(n);
+                    break;
+                case LET_ARRAY:
+                    writePush(n);
+                    writeExpression(ast.first[n]);
+                    vmw.writeArithmetic(Command.ADD);
+                    writeExpression(ast.second(n));
+                    vmw.writePop(Segment.TEMP, 0);
+                    vmw.writePop(Segment.POINTER, 1);
+                    vmw.writePush(Segment.TEMP, 0);
+                    vmw.writePop(Segment.THAT, 0);
+                    break;
+                case IF:
+                    labelNum++;
+                    writeIf(n, labelNum);
+                    break;
+                case WHILE:
+                    labelNum++;
+                    writeWhile(n, labelNum);
+                    break;
+                case DO:
+                    writeExpression(ast.first[n]);
+                    vmw.writePop(Segment.TEMP, 0);
+                    break;
+                case RETURN:
+                    if (ast.first[n] != Ast.NONE) writeExpression(ast.first[n]);
+                    if (voidSubroutine) vmw.writePush(Segment.CONSTANT, 0);
+                    vmw.writeReturn();
+                    break;
+            }
+        }
+    }
+
+    private String label(int kind, int n) {
+        if (optimize) {
+            n = 2 * n + (kind == IF_FALSE || kind == WHILE_END ? 1 : 0);
+            kind = PREFIXES.length - 1;
+        }
+        return n < LABELS[kind].length ? LABELS[kind][n] : PREFIXES[kind] + n;
+    }
+
+    private void writeIf(int n, int label) {
+        int condition = ast.first[n], then = ast.second(n), otherwise = ast.next[then];
+        String onTrue = label(IF_TRUE, label), end = label(IF_FALSE, label);
+        if (optimize && (otherwise == Ast.NONE || ast.first[otherwise] == Ast.NONE)) {
+            writeBranch(condition, false, end);
+            writeStatements(then);
+        } else if (optimize && isBoolean(condition) && ast.first[then] == Ast.NONE) {
+            writeBranch(condition, true, end);
+            writeStatements(otherwise);
+        } else if (optimize && isBoolean(condition) && !inverted(condition)) {
+            writeBranch(condition, true, onTrue);
+            writeStatements(otherwise);
+            vmw.position = ast.pos[n];
+            vmw.writeGoto(end);
+            vmw.writeLabel(onTrue);
+            writeStatements(then);
+        } else {
+            writeExpression(condition);
+            vmw.writeArithmetic(Command.NOT);
+            vmw.writeIf(onTrue);
+            writeStatements(then);
+            vmw.position = ast.pos[n];
+            vmw.writeGoto(end);
+            vmw.writeLabel(onTrue);
+            if (otherwise != Ast.NONE) writeStatements(otherwise);
+        }
+        vmw.position = ast.pos[n];
+        vmw.writeLabel(end);
+    }
+
+    private void writeWhile(int n, int label) {
+        int condition = ast.first[n];
+        String test = label(WHILE_EXP, label), end = label(WHILE_END, label);
+        if (optimize && isBoolean(condition) && !inverted(condition)) {
+            vmw.writeGoto(test);
+            vmw.writeLabel(end);
+            writeStatements(ast.second(n));
+            vmw.position = ast.pos[n];
+            vmw.writeLabel(test);
+            writeBranch(condition, true, end);
+            return;
+        }
+        vmw.writeLabel(test);
+        writeExpression(condition);
+        vmw.writeArithmetic(Command.NOT);
+        vmw.writeIf(end);
+        writeStatements(ast.second(n));
+        vmw.position = ast.pos[n];
+        vmw.writeGoto(test);
+        vmw.writeLabel(end);
+    }
+
+    private void writeBranch(int condition, boolean when, String target) {
+        while (isNegation(condition)) {
+            condition = ast.first[condition];
+            when = !when;
+        }
+        writeExpression(condition);
+        if (!when) vmw.writeArithmetic(Command.NOT);
+        vmw.writeIf(target);
+    }
+
+    private boolean inverted(int condition) {
+        boolean inverted = false;
+        for (; isNegation(condition); condition = ast.first[condition]) inverted = !inverted;
+        return inverted;
+    }
+
+    private boolean isNegation(int n) {
+        return ast.kinds[n] == Node.UNARY && ast.a[n] == '~' && isBoolean(ast.first[n]);
+    }
+
+    private boolean isBoolean(int n) {
+        switch (ast.kinds[n]) {
+            case TRUE:
+            case FALSE:
+                return true;
+            case INT:
+                return ast.a[n] == 0 || ast.a[n] == -1;
+            case UNARY:
+                return ast.a[n] == '~' && isBoolean(ast.first[n]);
+            case BINARY:
+                char op = (char) ast.a[n];
+                if (op == '<' || op == '>' || op == '=') return true;
+                return (op == '&' || op == '|') && isBoolean(ast.first[n]) && isBoolean(ast.second(n));
+            default:
+                return false;
+        }
+    }
+
+    private void writeExpression(int n) {
+        switch (ast.kinds[n]) {
+            case INT:
+                writeConstant(ast.a[n]);
+                break;
+            case STRING:
+                if (poolStrings) {
+                    writePooledString(ast.names[n]);
+                } else {
+                    writeString(ast.names[n]);
+                }
+                break;
+            case TRUE:
+                vmw.writePush(Segment.CONSTANT, 0);
+                vmw.writeArithmetic(Command.NOT);
+                break;
+            case FALSE:
+            case NULL:
+                vmw.writePush(Segment.CONSTANT, 0);
+                break;
+            case THIS:
+                vmw.writePush(Segment.POINTER, 0);
+                break;
+            case VAR:
+                writePush(n);
+                break;
+            case ARRAY:
+                writePush(n);
+                writeExpression(ast.first[n]);
+                vmw.writeArithmetic(Command.ADD);
+                vmw.writePop(Segment.POINTER, 1);
+                vmw.writePush(Segment.THAT, 0);
+                break;
+            case CALL:
+                int nArgs = 0;
+                if (ast.ref[n] != Ast.NONE) {
+                    writePush(n);
+                    nArgs++;
+                }
+                for (int c = ast.first[n]; c != Ast.NONE; c = ast.next[c]) {
+                    writeExpression(c);
+                    nArgs++;
+                }
+                vmw.writeCall(ast.names[n], nArgs);
+                break;
+            case UNARY:
+                writeExpression(ast.first[n]);
+                vmw.writeArithmetic(ast.a[n] == '-' ? Command.NEG : Command.NOT);
+                break;
+            case BINARY:
+                writeExpression(ast.first[n]);
+                writeExpression(ast.second(n));
+                vmw.writeArithmetic((char) ast.a[n]);
+                break;
+            case DOUBLE:
+                writeDoubling(n);
+                break;
+        }
+    }
+
+    private void writeDoubling(int n) {
+        int operand = ast.first[n];
+        int times = ast.a[n];
+        writeExpression(operand);
+        if (ast.kinds[operand] == Node.VAR) {
+            writePush(operand);
+            vmw.writeArithmetic(Command.ADD);
+            times--;
+        }
+        for (int i = 0; i < times; i++) {
+            vmw.writePop(Segment.TEMP, 1);
+            vmw.writePush(Segment.TEMP, 1);
+            vmw.writePush(Segment.TEMP, 1);
+            vmw.writeArithmetic(Command.ADD);
+        }
+    }
+
+    private void writePush(int n) {
+        int handle = variable(n);
+        vmw.writePush(SymbolTable.segment(handle), SymbolTable.index(handle));
+    }
+
+    private void writePop(int n) {
+        int handle = variable(n);
+        vmw.writePop(SymbolTable.segment(handle), SymbolTable.index(handle));
+    }
+
+    private int variable(int n) {
+        if (ast.ref[n] == Ast.NONE) {
+            throw new IllegalStateException("unknown variable " + ast.names[n] + " in class " + className);
+        }
+        return ast.ref[n];
+    }
+
+    private void writeConstant(int value) {
+        if (value >= 0) {
+            vmw.writePush(Segment.CONSTANT, value);
+        } else if (value == -32768) {
+            vmw.writePush(Segment.CONSTANT, 32767);
+            vmw.writeArithmetic(Command.NOT);
+        } else if (value == -1) {
+            vmw.writePush(Segment.CONSTANT, 0);
+            vmw.writeArithmetic(Command.NOT);
+        } else {
+            vmw.writePush(Segment.CONSTANT, -value);
+            vmw.writeArithmetic(Command.NEG);
+        }
+    }
+
+    private void writeStringPool() {
+        vmw.writeFunction(className + ".$strings", 0);
+        for (Map.Entry<String, Integer> e: stringPool.entrySet()) {
+            writeString(e.getKey());
+            vmw.writePop(Segment.STATIC, e.getValue());
+        }
+        vmw.writePush(Segment.CONSTANT, 0);
+        vmw.writeReturn();
+    }
+
+    private void writeString(String s) {
+        vmw.writePush(Segment.CONSTANT, s.length());
+        vmw.writeCall("String.new", 1);
+        for (int i = 0; i < s.length(); i++) {
+            vmw.writePush(Segment.CONSTANT, (int) s.charAt(i));
+            vmw.writeCall("String.appendChar", 2);
+        }
+    }
+
+    private void writePooledString(String s) {
+        Integer index = stringPool.get(s);
+        if (index == null) {
+            index = staticNum + stringPool.size();
+            stringPool.put(s, index);
+        }
+        String ready = label(STRING_READY, ++labelNum);
+        vmw.writePush(Segment.STATIC, index);
+        vmw.writeIf(ready);
+        vmw.writeCall(className + ".$strings", 0);
+        vmw.writePop(Segment.TEMP, 0);
+        vmw.writeLabel(ready);
+        vmw.writePush(Segment.STATIC, index);
+    }
+}
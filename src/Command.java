@@ -0,0 +1,13 @@
+import java.nio.charset.StandardCharsets;
+
+enum Command {
+    ADD("add"), SUB("sub"), NEG("neg"), EQ("eq"), GT("gt"), LT("lt"), AND("and"), OR("or"), NOT("not");
+
+    final String text;
+    final byte[] line;
+
+    Command(String text) {
+        this.text = text;
+        line = (text + "\n").getBytes(StandardCharsets.US_ASCII);
+    }
+}
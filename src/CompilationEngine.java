@@ -1,362 +1,455 @@
-import java.io.*;
 import java.util.*;
 
 class CompilationEngine {
-    private VMWriter vmw;
     private JackTokenizer jt;
-    private Set<String> operators;
-    private SymbolTable st;
-    private String className;
-    private int fieldNum, labelNum;
-    private String subroutineName, subroutineKind, subroutineType;
+    private Ast ast;
+    private VMCode code;
+    private final CompileStats stats;
+    private final List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+    private final int maxErrors;
+    private int lastErrorToken = -1;
+    final List<String> frames = new ArrayList<String>();
+    int root, emitted, inlined, framesSaved;
 
-    CompilationEngine(JackTokenizer jt, VMWriter pw) {
+    CompilationEngine(JackTokenizer jt, Options options, CompileStats stats) {
         this.jt = jt;
-        vmw = pw;
-        jt.advance();
-        initOperators();
-        st = new SymbolTable();
-        fieldNum = 0;
-        labelNum = -1;
-        compileClass();
+        this.stats = stats;
+        maxErrors = options.maxErrors;
+        stats.start();
+        ast = new Ast(jt.sourceLength() / 16);
+        jt.advance();
+        root = compileClass();
+        stats.lap(CompileStats.Phase.PARSE);
+        if (!diagnostics.isEmpty()) throw new CompileError(diagnostics, false);
+        stats.lookups = Resolver.resolve(ast, root, options.index, diagnostics);
+        if (diagnostics.size() > maxErrors) throw new CompileError(diagnostics.subList(0, maxErrors), true);
+        if (!diagnostics.isEmpty()) throw new CompileError(diagnostics, false);
+        stats.lap(CompileStats.Phase.RESOLVE);
+        if (options.optimize) ConstantFolder.fold(ast, root);
+        stats.lap(CompileStats.Phase.FOLD);
+        code = CodeGenerator.generate(ast, root, options);
+        emitted = code.size;
+        stats.lap(CompileStats.Phase.GENERATE);
+        if (options.optimize) {
+            PeepholeOptimizer.optimize(code);
+            inlined = Inliner.inline(Collections.singletonList(code))[0];
+            if (inlined > 0) PeepholeOptimizer.optimize(code);
+            if (!options.wholeProgram) framesSaved = FrameAllocator.allocate(code, frames);
+        }
+        if (options.labelOffsets && !options.wholeProgram) code.numberLabels();
+        stats.lap(CompileStats.Phase.OPTIMIZE);
+        stats.tokens = jt.tokenCount();
+        stats.nodes = ast.size;
+        stats.inlined = inlined;
+        stats.framesSaved = framesSaved;
+        stats.count(code);
     }
 
-    private void initOperators() {
-        operators = new HashSet<String>();
-        String[] s = new String[] {"+", "-", "*", "/", "&", "|", "<", ">", "=", "~"};
-        Collections.addAll(operators, s);
+    CompileStats stats() {
+        return stats;
     }
 
-    private void compileClass() {
-        jt.advance();
-        className = jt.token;
-        jt.advance();
-        jt.advance();
-        while (jt.keyWord().equals("static") || jt.keyWord().equals("field")) {
-            compileClassVarDec();
+    VMCode code() {
+        return code;
+    }
+
+    String className() {
+        return ast.names[root];
+    }
+
+    int instructionCount() {
+        return code.size;
+    }
+
+    int nodeCount() {
+        return ast.size;
+    }
+
+    private static final class SyntaxError extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError() {
+            super(null, null, false, false);
         }
-        while (jt.keyWord().equals("constructor") || jt.keyWord().equals("function") || jt.keyWord().equals("method")) {
-            compileSubroutineDec();
-            st.startSubroutin();
+    }
+
+    private SyntaxError error(String expected) {
+        if (jt.tokenCount() != lastErrorToken) {
+            lastErrorToken = jt.tokenCount();
+            String found = jt.token == null ? "end of input" : "'" + jt.token + "'";
+            report(jt.token == null && jt.inComment() ? "unterminated comment" : "expected " + expected + ", found " + found);
         }
+        return new SyntaxError();
+    }
+
+    private void report(String message) {
+        diagnostics.add(new Diagnostic(jt.line(), jt.column(), message));
+        if (diagnostics.size() > maxErrors) throw new CompileError(diagnostics.subList(0, maxErrors), true);
+    }
+
+    private int position() {
+        return Ast.position(jt.line(), jt.column());
+    }
+
+    private void expect(char symbol) {
+        if (jt.symbol() != symbol) throw error("'" + symbol + "'");
         jt.advance();
     }
 
-    private void compileClassVarDec() {
-        String kind = jt.token;
+    private String identifier() {
+        if (jt.tokenType() != TokenKind.IDENTIFIER) throw error("identifier");
+        String name = jt.token;
         jt.advance();
+        return name;
+    }
+
+    private String type(boolean allowVoid) {
+        Keyword k = jt.keyWord();
+        if (jt.tokenType() != TokenKind.IDENTIFIER && k != Keyword.INT && k != Keyword.CHAR && k != Keyword.BOOLEAN
+                && !(allowVoid && k == Keyword.VOID)) {
+            throw error(allowVoid ? "return type" : "type");
+        }
         String type = jt.token;
         jt.advance();
-        String name = jt.token;
-        jt.advance();
-        st.define(name, type, kind);
-        if (kind.equals("field")) fieldNum++;
-        while (jt.symbol().equals(",")) {
+        return type;
+    }
+
+    private static boolean isMember(Keyword k) {
+        return k == Keyword.STATIC || k == Keyword.FIELD || k == Keyword.CONSTRUCTOR || k == Keyword.FUNCTION || k == Keyword.METHOD;
+    }
+
+    private static boolean isStatement(Keyword k) {
+        return k == Keyword.LET || k == Keyword.IF || k == Keyword.WHILE || k == Keyword.DO || k == Keyword.RETURN;
+    }
+
+    private void skipMember() {
+        skip(true);
+    }
+
+    private void skipStatement() {
+        skip(false);
+    }
+
+    private void skip(boolean member) {
+        int depth = 0;
+        while (jt.token != null) {
+            char c = jt.symbol();
+            if (depth == 0) {
+                if (c == '}') return;
+                if (c == ';') {
+                    jt.advance();
+                    return;
+                }
+                if (member ? isMember(jt.keyWord()) : isStatement(jt.keyWord())) return;
+            }
+            if (c == '{') depth++;
+            if (c == '}') depth--;
             jt.advance();
-            name = jt.token;
+        }
+    }
+
+    private int compileClass() {
+        int n;
+        try {
+            if (jt.keyWord() != Keyword.CLASS) throw error("'class'");
+            int position = position();
             jt.advance();
-            st.define(name, type, kind);
-            if (kind.equals("field")) fieldNum++;
+            n = ast.add(Node.CLASS, identifier(), null);
+            ast.pos[n] = position;
+            expect('{');
+        } catch (SyntaxError e) {
+            throw new CompileError(diagnostics, false);
         }
+        while (jt.token != null && jt.symbol() != '}') {
+            try {
+                if (jt.keyWord() == Keyword.STATIC || jt.keyWord() == Keyword.FIELD) {
+                    compileClassVarDec(n);
+                } else if (isMember(jt.keyWord())) {
+                    ast.append(n, compileSubroutineDec());
+                } else {
+                    throw error("class member");
+                }
+            } catch (SyntaxError e) {
+                skipMember();
+            }
+        }
+        if (jt.token == null) error("'}'");
         jt.advance();
+        if (jt.token == null && jt.inComment()) error("end of input");
+        return n;
     }
 
-    private void compileSubroutineDec() {
-        subroutineKind = jt.token;
-        jt.advance();
-        subroutineType = jt.token;
-        jt.advance();
-        subroutineName = className + "." + jt.token;
-        jt.advance();
+    private void compileClassVarDec(int parent) {
+        Node kind = jt.keyWord() == Keyword.FIELD ? Node.FIELD_VAR : Node.STATIC_VAR;
         jt.advance();
-        if (subroutineKind.equals("method")) {
-            st.define("this", className, "argument");
+        String type = type(false);
+        ast.append(parent, ast.add(kind, identifier(), type));
+        while (jt.symbol() == ',') {
+            jt.advance();
+            ast.append(parent, ast.add(kind, identifier(), type));
         }
-        compileParameterList();
-        jt.advance();
-        compileSubroutineBody();
+        expect(';');
+    }
+
+    private int compileSubroutineDec() {
+        Node kind = jt.keyWord() == Keyword.CONSTRUCTOR ? Node.CONSTRUCTOR
+                : jt.keyWord() == Keyword.METHOD ? Node.METHOD : Node.FUNCTION;
+        int position = position();
+        jt.advance();
+        String type = type(true);
+        int n = ast.add(kind, identifier(), type);
+        ast.pos[n] = position;
+        expect('(');
+        compileParameterList(n);
+        expect(')');
+        compileSubroutineBody(n);
+        return n;
     }
 
-    private void compileParameterList() {
-        if (jt.tokenType().equals("symbol")) {
+    private void compileParameterList(int parent) {
+        if (jt.symbol() == ')') {
             return;
         }
-        String kind = "argument";
-        String type = jt.token;
-        jt.advance();
-        String name = jt.token;
-        jt.advance();
-        st.define(name, type, kind);
-        while (jt.symbol().equals(",")) {
-            jt.advance();
-            type = jt.token;
+        String type = type(false);
+        ast.append(parent, ast.add(Node.PARAMETER, identifier(), type));
+        while (jt.symbol() == ',') {
             jt.advance();
-            name = jt.token;
-            jt.advance();
-            st.define(name, type, kind);
+            type = type(false);
+            ast.append(parent, ast.add(Node.PARAMETER, identifier(), type));
         }
     }
 
-    private void compileSubroutineBody() {
-        jt.advance();
-        int n = 0;
-        while (jt.keyWord().equals("var")) {
-            n = n + compileVarDec();
-        }
-        vmw.writeFunction(subroutineName, n);
-        if (subroutineKind.endsWith("constructor")) {
-            vmw.writePush("constant", fieldNum);
-            vmw.writeCall("Memory.alloc", 1);
-            vmw.writePop("pointer", 0);
-        } else if (subroutineKind.equals("method")) {
-            vmw.writePush("argument", 0);
-            vmw.writePop("pointer", 0);
+    private void compileSubroutineBody(int parent) {
+        expect('{');
+        while (jt.keyWord() == Keyword.VAR) {
+            try {
+                compileVarDec(parent);
+            } catch (SyntaxError e) {
+                skipStatement();
+            }
         }
-        compileStatements();
-        jt.advance();
+        ast.append(parent, compileStatements());
+        expect('}');
     }
 
-    private int compileVarDec() {
-        int n = 0;
+    private void compileVarDec(int parent) {
         jt.advance();
-        String kind = "local";
-        String type = jt.token;
-        jt.advance();
-        String name = jt.token;
-        jt.advance();
-        st.define(name, type, kind);
-        n++;
-        while (jt.symbol().equals(",")) {
+        String type = type(false);
+        ast.append(parent, ast.add(Node.LOCAL_VAR, identifier(), type));
+        while (jt.symbol() == ',') {
             jt.advance();
-            name = jt.token;
-            jt.advance();
-            st.define(name, type, kind);
-            n++;
+            ast.append(parent, ast.add(Node.LOCAL_VAR, identifier(), type));
         }
-        jt.advance();
-        return n;
+        expect(';');
     }
 
-    private void compileStatements() {
-        while (true) {
-            if (jt.keyWord().equals("let")) {
-                compileLet();
-                continue;
-            }
-            if (jt.keyWord().equals("if")) {
-                labelNum++;
-                compileIf(labelNum);
-                continue;
-            }
-            if (jt.keyWord().equals("while")) {
-                labelNum++;
-                compileWhile(labelNum);
-                continue;
-            }
-            if (jt.keyWord().equals("do")) {
-                compileDo();
-                continue;
+    private int compileStatements() {
+        int block = ast.add(Node.BLOCK, 0);
+        while (jt.token != null && jt.symbol() != '}') {
+            try {
+                int position = position();
+                int n = compileStatement();
+                if (ast.pos[n] == 0) ast.pos[n] = position;
+                ast.append(block, n);
+            } catch (SyntaxError e) {
+                skipStatement();
             }
-            if (jt.keyWord().equals("return")) {
-                compileReturn();
-                continue;
+        }
+        return block;
+    }
+
+    private int compileStatement() {
+        if (jt.tokenType() == TokenKind.KEYWORD) {
+            switch (jt.keyWord()) {
+                case LET:
+                    return compileLet();
+                case IF:
+                    return compileIf();
+                case WHILE:
+                    return compileWhile();
+                case DO:
+                    return compileDo();
+                case RETURN:
+                    return compileReturn();
             }
-            break;
         }
+        throw error("statement");
     }
 
-    private void compileLet() {
-        jt.advance();
-        String name = jt.token;
+    private int compileLet() {
         jt.advance();
-        if (jt.symbol().equals("[")) {
-            vmw.writePush(st.kindOf(name), st.indexOf(name));
-            jt.advance();
-            compileExpression();
+        int position = position();
+        String name = identifier();
+        int n;
+        if (jt.symbol() == '[') {
             jt.advance();
-            vmw.writeArithmetic("+");
-            jt.advance();
-            compileExpression();
-            vmw.writePop("temp", 0);
-            vmw.writePop("pointer", 1);
-            vmw.writePush("temp", 0);
-            vmw.writePop("that", 0);
+            int index = compileExpression();
+            expect(']');
+            expect('=');
+            n = ast.add(Node.LET_ARRAY, 0, index, compileExpression());
         } else {
-            jt.advance();
-            compileExpression();
-            vmw.writePop(st.kindOf(name), st.indexOf(name));
+            expect('=');
+            n = ast.add(Node.LET, 0, compileExpression());
         }
-        jt.advance();
+        ast.names[n] = name;
+        ast.pos[n] = position;
+        expect(';');
+        return n;
     }
 
-    private void compileIf(int n) {
-        jt.advance();
-        jt.advance();
-        compileExpression();
-        vmw.writeArithmetic("~");
-        vmw.writeIf("IF_TRUE" + n);
-        jt.advance();
-        jt.advance();
-        compileStatements();
-        jt.advance();
-        vmw.writeGoto("IF_FALSE" + n);
-        vmw.writeLabel("IF_TRUE" + n);
-        if (jt.token.equals("else")) {
-            jt.advance();
-            jt.advance();
-            compileStatements();
+    private int compileIf() {
+        jt.advance();
+        expect('(');
+        int n = ast.add(Node.IF, 0, compileExpression());
+        expect(')');
+        expect('{');
+        ast.append(n, compileStatements());
+        expect('}');
+        if (jt.keyWord() == Keyword.ELSE) {
             jt.advance();
+            expect('{');
+            ast.append(n, compileStatements());
+            expect('}');
         }
-        vmw.writeLabel("IF_FALSE" + n);
+        return n;
     }
 
-    private void compileWhile(int n) {
-        vmw.writeLabel("WHILE_EXP" + n);
-        jt.advance();
-        jt.advance();
-        compileExpression();
-        vmw.writeArithmetic("~");
-        vmw.writeIf("WHILE_END" + n);
-        jt.advance();
-        jt.advance();
-        compileStatements();
-        jt.advance();
-        vmw.writeGoto("WHILE_EXP" + n);
-        vmw.writeLabel("WHILE_END" + n);
+    private int compileWhile() {
+        jt.advance();
+        expect('(');
+        int n = ast.add(Node.WHILE, 0, compileExpression());
+        expect(')');
+        expect('{');
+        ast.append(n, compileStatements());
+        expect('}');
+        return n;
     }
 
-    private void compileDo() {
-        jt.advance();
-        compileExpression();
-        vmw.writePop("temp", 0);
+    private int compileDo() {
         jt.advance();
+        int call = compileTerm();
+        if (ast.kinds[call] != Node.CALL) throw error("subroutine call");
+        int n = ast.add(Node.DO, 0, call);
+        expect(';');
+        return n;
     }
 
-    private void compileReturn() {
+    private int compileReturn() {
         jt.advance();
-        if (!jt.token.equals(";")) {
-            compileExpression();
-        }
-        if (subroutineType.equals("void")) {
-            vmw.writePush("constant", 0);
+        int n = ast.add(Node.RETURN, 0);
+        if (jt.symbol() != ';') {
+            ast.append(n, compileExpression());
         }
-        vmw.writeReturn();
-        jt.advance();
+        expect(';');
+        return n;
     }
 
-    private void compileExpression() {
-        compileTerm();
-        while (operators.contains(jt.token)) {
-            String symbol = jt.symbol();
+    private int compileExpression() {
+        int n = compileTerm();
+        while (isOperator(jt.symbol())) {
+            char symbol = jt.symbol();
             jt.advance();
-            compileTerm();
-            vmw.writeArithmetic(symbol);
+            n = ast.add(Node.BINARY, symbol, n, compileTerm());
         }
+        return n;
     }
 
-    private void compileTerm() {
-        if (jt.tokenType().equals("integerConstant")) {
-            vmw.writePush("constant", jt.intVal());
-            jt.advance();
-        } else if (jt.tokenType().equals("stringConstant")) {
-            String s = jt.token;
-            vmw.writePush("constant", s.length()-2);
-            vmw.writeCall("String.new", 1);
-            for (int i = 1; i < s.length()-1; i++) {
-                vmw.writePush("constant", (int) s.charAt(i));
-                vmw.writeCall("String.appendChar", 2);
-            }
-            jt.advance();
-        } else if (jt.tokenType().equals("keyword")){
-            if (jt.token.equals("true")) {
-                vmw.writePush("constant", 0);
-                vmw.writeArithmetic("~");
-            } else if (jt.token.equals("false") || jt.token.equals("null")) {
-                vmw.writePush("constant", 0);
-            } else {
-                vmw.writePush("pointer", 0);
-            }
-            jt.advance();
-        } else if (jt.tokenType().equals("symbol")) {
-            if (jt.token.equals("-") || jt.token.equals("~")) {
-                String symbol = jt.symbol().equals("-") ? "neg" : jt.symbol();
-                jt.advance();
-                compileTerm();
-                vmw.writeArithmetic(symbol);
-            } else if (jt.token.equals("(")) {
-                jt.advance();
-                compileExpression();
-                jt.advance();
-            }
-        } else if (jt.tokenType().equals("identifier")){
-            String name = jt.identifier();
-            jt.advance();
-            int n = 0;
-            if (jt.token.equals("[")) {
-                vmw.writePush(st.kindOf(name), st.indexOf(name));
-                jt.advance();
-                compileExpression();
-                jt.advance();
-                vmw.writeArithmetic("+");
-                vmw.writePop("pointer", 1);
-                vmw.writePush("that", 0);
-            } else if (jt.token.equals("(")) {
-                vmw.writePush("pointer", 0);
-                name = className + "." + name;
-                jt.advance();
-                n = 1 + compileExpressionList();
+    private static boolean isOperator(char c) {
+        switch (c) {
+            case '+': case '-': case '*': case '/': case '&': case '|': case '<': case '>': case '=':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int compileTerm() {
+        if (jt.tokenType() == null) throw error("expression");
+        int n;
+        switch (jt.tokenType()) {
+            case INTEGER_CONSTANT:
+                if (jt.intVal() > Short.MAX_VALUE) report("integer constant out of range");
+                n = ast.add(Node.INT, jt.intVal());
                 jt.advance();
-                vmw.writeCall(name, n);
-            } else if (jt.token.equals(".")) {
+                return n;
+            case STRING_CONSTANT:
+                if (!jt.terminated()) report("unterminated string constant");
+                n = ast.add(Node.STRING, jt.stringVal(), null);
                 jt.advance();
-                if (st.kindOf(name) != null) {
-                    vmw.writePush(st.kindOf(name), st.indexOf(name));
-                    name = st.typeOf(name) + "." + jt.identifier();
-                    n = 1;
-                } else {
-                    name = name + "." + jt.identifier();
+                return n;
+            case KEYWORD:
+                switch (jt.keyWord()) {
+                    case TRUE:
+                        n = ast.add(Node.TRUE, 0);
+                        break;
+                    case FALSE:
+                        n = ast.add(Node.FALSE, 0);
+                        break;
+                    case NULL:
+                        n = ast.add(Node.NULL, 0);
+                        break;
+                    case THIS:
+                        n = ast.add(Node.THIS, 0);
+                        break;
+                    default:
+                        throw error("expression");
                 }
                 jt.advance();
+                return n;
+            case SYMBOL:
+                switch (jt.symbol()) {
+                    case '-':
+                    case '~':
+                        char symbol = jt.symbol();
+                        jt.advance();
+                        return ast.add(Node.UNARY, symbol, compileTerm());
+                    case '(':
+                        jt.advance();
+                        n = compileExpression();
+                        expect(')');
+                        return n;
+                    default:
+                        throw error("expression");
+                }
+            default:
+                int position = position();
+                String name = jt.identifier();
                 jt.advance();
-                n = n + compileExpressionList();
-                jt.advance();
-                vmw.writeCall(name, n);
-            } else {
-                vmw.writePush(st.kindOf(name), st.indexOf(name));
-            }
+                switch (jt.symbol()) {
+                    case '[':
+                        jt.advance();
+                        n = ast.add(Node.ARRAY, 0, compileExpression());
+                        ast.names[n] = name;
+                        expect(']');
+                        break;
+                    case '(':
+                        n = ast.add(Node.CALL, name, null);
+                        jt.advance();
+                        compileExpressionList(n);
+                        expect(')');
+                        break;
+                    case '.':
+                        jt.advance();
+                        n = ast.add(Node.CALL, identifier(), name);
+                        expect('(');
+                        compileExpressionList(n);
+                        expect(')');
+                        break;
+                    default:
+                        n = ast.add(Node.VAR, name, null);
+                }
+                ast.pos[n] = position;
+                return n;
         }
     }
 
-    private int compileExpressionList() {
-        int n = 0;
-        if (!jt.token.equals(")")) {
-            compileExpression();
-            n++;
-            while (jt.token.equals(",")) {
+    private void compileExpressionList(int call) {
+        if (jt.symbol() != ')') {
+            ast.append(call, compileExpression());
+            while (jt.symbol() == ',') {
                 jt.advance();
-                compileExpression();
-                n++;
-            }
-        }
-        return n;
-    }
-
-    private void eat(String tokenType) {
-        if (tokenType.equals(jt.tokenType())) {
-            vmw.print("<" + tokenType + ">");
-            if (tokenType.equals("stringConstant")) {
-               vmw.print(jt.stringVal());
-            } else if (tokenType.equals("symbol")) {
-                vmw.print(jt.symbol());
-            } else {
-                vmw.print(jt.token);
+                ast.append(call, compileExpression());
             }
-            vmw.print("</" + tokenType + ">");
-            vmw.println();
-        } else {
-            vmw.close();
-            throw new NullPointerException();
         }
-        if (jt.hasMoreTokens()) jt.advance();
     }
 }
@@ -0,0 +1,63 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+
+public class CompileClient {
+    static final String USAGE = "usage: CompileClient [--socket PATH] [--stop | JackCompiler options and input]";
+
+    public static void main(String[] args) throws IOException {
+        String socketPath = null;
+        StringBuilder request = new StringBuilder();
+        boolean stdin = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("--socket")) {
+                if (i + 1 == args.length) {
+                    System.err.println("--socket needs a path");
+                    System.err.println(USAGE);
+                    System.exit(2);
+                }
+                socketPath = args[++i];
+                continue;
+            }
+            if (Options.takesValue(arg) && i + 1 < args.length) {
+                request.append('\t').append(arg);
+                arg = args[++i];
+            } else if (arg.equals("-")) {
+                stdin = true;
+            } else if (arg.startsWith("--stats=")) {
+                arg = "--stats=" + absolute(arg.substring("--stats=".length()));
+            } else if (!arg.startsWith("-")) {
+                arg = absolute(arg);
+            }
+            request.append('\t').append(arg);
+        }
+        byte[] body = stdin ? System.in.readAllBytes() : new byte[0];
+        request.insert(0, body.length).append('\n');
+        Path socket = CompileServer.socket(socketPath);
+        try (SocketChannel channel = SocketChannel.open(UnixDomainSocketAddress.of(socket))) {
+            OutputStream out = new BufferedOutputStream(Channels.newOutputStream(channel));
+            out.write(request.toString().getBytes(StandardCharsets.UTF_8));
+            out.write(body);
+            out.flush();
+            InputStream in = new BufferedInputStream(Channels.newInputStream(channel));
+            String[] header = CompileServer.readLine(in, CompileServer.MAX_HEADER).split("\t");
+            byte[] vm = in.readNBytes(Integer.parseInt(header[1]));
+            byte[] diagnostics = in.readNBytes(Integer.parseInt(header[2]));
+            System.out.write(vm);
+            System.out.flush();
+            System.err.write(diagnostics);
+            System.err.flush();
+            System.exit(Integer.parseInt(header[0]));
+        } catch (SocketException e) {
+            System.err.println("no jackc daemon on " + socket + " (start one with JackCompiler --daemon)");
+            System.exit(2);
+        }
+    }
+
+    private static String absolute(String path) {
+        return new File(path).toPath().toAbsolutePath().normalize().toString();
+    }
+}
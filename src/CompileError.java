@@ -0,0 +1,28 @@
+import java.util.*;
+
+final class CompileError extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    final List<Diagnostic> diagnostics;
+    final boolean truncated;
+
+    CompileError(List<Diagnostic> diagnostics, boolean truncated) {
+        super(null, null, false, false);
+        this.diagnostics = Collections.unmodifiableList(new ArrayList<Diagnostic>(diagnostics));
+        this.truncated = truncated;
+    }
+
+    String format(String file) {
+        StringBuilder sb = new StringBuilder();
+        for (Diagnostic d: diagnostics) {
+            if (sb.length() > 0) sb.append('\n');
+            sb.append(d.format(file));
+        }
+        if (truncated) sb.append('\n').append(file == null ? "" : file + ": ").append("too many errors, stopping after ").append(diagnostics.size());
+        return sb.toString();
+    }
+
+    public String getMessage() {
+        return format(null);
+    }
+}
@@ -0,0 +1,194 @@
+import java.io.*;
+import java.net.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.*;
+import java.util.*;
+import java.util.concurrent.*;
+import jdk.net.ExtendedSocketOptions;
+import jdk.net.UnixDomainPrincipal;
+
+class CompileServer {
+    static final String STOP = "--stop";
+    static final int MAX_REQUEST = 16 << 20, MAX_HEADER = 64 << 10;
+    private static final int CACHED_STREAMS = 256;
+    private static final byte[] EMPTY = new byte[0];
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+    private final Path socket;
+    private final Map<String, String> stamps = new ConcurrentHashMap<String, String>();
+    private final Map<String, byte[]> streams = Collections.synchronizedMap(new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest) {
+            return size() > CACHED_STREAMS;
+        }
+    });
+    private ServerSocketChannel server;
+    private volatile boolean running = true;
+
+    CompileServer(Path socket) {
+        this.socket = socket;
+    }
+
+    static Path defaultSocket() {
+        return Paths.get(System.getProperty("java.io.tmpdir"), "jackc-" + System.getProperty("user.name"), "daemon.sock");
+    }
+
+    static Path socket(String path) {
+        return (path == null ? defaultSocket() : Paths.get(path)).toAbsolutePath();
+    }
+
+    void serve() throws IOException {
+        secureDirectory(socket.getParent());
+        removeStaleSocket();
+        ExecutorService pool = Executors.newCachedThreadPool();
+        server = ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+        server.bind(UnixDomainSocketAddress.of(socket));
+        System.err.println("jackc daemon listening on " + socket);
+        try {
+            while (running) {
+                final SocketChannel channel = server.accept();
+                pool.execute(new Runnable() {
+                    public void run() {
+                        handle(channel);
+                    }
+                });
+            }
+        } catch (ClosedChannelException e) {
+            if (running) throw e;
+        } finally {
+            pool.shutdown();
+            server.close();
+            Files.deleteIfExists(socket);
+        }
+    }
+
+    private static void secureDirectory(Path dir) throws IOException {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            Files.createDirectories(dir);
+            return;
+        }
+        try {
+            Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+        } catch (FileAlreadyExistsException e) {
+        }
+        if (!Files.isDirectory(dir, LinkOption.NOFOLLOW_LINKS)
+                || !Files.getOwner(dir, LinkOption.NOFOLLOW_LINKS).getName().equals(System.getProperty("user.name"))
+                || !Files.getPosixFilePermissions(dir, LinkOption.NOFOLLOW_LINKS).equals(OWNER_ONLY)) {
+            throw new IOException(dir + " must be a directory owned by " + System.getProperty("user.name") + " with mode 700");
+        }
+    }
+
+    private void removeStaleSocket() throws IOException {
+        if (!Files.exists(socket, LinkOption.NOFOLLOW_LINKS)) return;
+        try {
+            SocketChannel.open(UnixDomainSocketAddress.of(socket)).close();
+        } catch (ConnectException e) {
+            Files.delete(socket);
+            return;
+        }
+        throw new IOException("a jackc daemon is already listening on " + socket);
+    }
+
+    private void handle(SocketChannel channel) {
+        try (SocketChannel c = channel) {
+            OutputStream out = Channels.newOutputStream(c);
+            if (!samePeer(c)) {
+                out.write(response(2, EMPTY, "request from another user refused\n".getBytes(StandardCharsets.UTF_8)));
+                return;
+            }
+            InputStream in = new BufferedInputStream(Channels.newInputStream(c));
+            String[] header = readLine(in, MAX_HEADER).split("\t", -1);
+            int length = parseLength(header[0]);
+            if (length < 0) {
+                out.write(response(2, EMPTY, ("request larger than " + MAX_REQUEST + " bytes refused\n").getBytes(StandardCharsets.UTF_8)));
+                return;
+            }
+            byte[] body = in.readNBytes(length);
+            if (body.length < length) throw new EOFException("connection closed");
+            out.write(respond(Arrays.copyOfRange(header, 1, header.length), body));
+            out.flush();
+        } catch (IOException | RuntimeException e) {
+            System.err.println("jackc daemon: " + e);
+        }
+        if (!running) {
+            try {
+                server.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private static boolean samePeer(SocketChannel c) throws IOException {
+        if (!c.supportedOptions().contains(ExtendedSocketOptions.SO_PEERCRED)) return true;
+        UnixDomainPrincipal peer = c.getOption(ExtendedSocketOptions.SO_PEERCRED);
+        return peer.user().getName().equals(System.getProperty("user.name"));
+    }
+
+    private static int parseLength(String s) {
+        try {
+            int length = Integer.parseInt(s);
+            return length <= MAX_REQUEST ? length : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private byte[] respond(String[] args, byte[] body) {
+        if (args.length == 1 && args[0].equals(STOP)) {
+            running = false;
+            return response(0, EMPTY, EMPTY);
+        }
+        Options options;
+        try {
+            options = Options.parse(args);
+            if (options.daemon) throw new IllegalArgumentException("--daemon is not allowed in a request");
+            if (!options.input.equals("-") && !new File(options.input).isAbsolute()) {
+                throw new IllegalArgumentException("input path must be absolute: " + options.input);
+            }
+            if (options.statsFile != null && !new File(options.statsFile).isAbsolute()) {
+                throw new IllegalArgumentException("--stats path must be absolute: " + options.statsFile);
+            }
+        } catch (IllegalArgumentException e) {
+            return response(2, EMPTY, (e.getMessage() + "\n" + Options.USAGE + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        String key = options.input.equals("-") && !options.verbose ? options.fingerprint() + " " + BuildCache.hash(body) : null;
+        if (key != null) {
+            byte[] cached = streams.get(key);
+            if (cached != null) return cached;
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream(), err = new ByteArrayOutputStream();
+        int status;
+        try {
+            status = JackCompiler.run(options, new ByteArrayInputStream(body), Channels.newChannel(out),
+                    new PrintStream(err, true, StandardCharsets.UTF_8), stamps);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return response(1, EMPTY, "interrupted\n".getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            return response(1, out.toByteArray(), (err + e.toString() + "\n").getBytes(StandardCharsets.UTF_8));
+        }
+        byte[] response = response(status, out.toByteArray(), err.toByteArray());
+        if (key != null && status == 0) streams.put(key, response);
+        return response;
+    }
+
+    private static byte[] response(int status, byte[] out, byte[] err) {
+        byte[] header = (status + "\t" + out.length + "\t" + err.length + "\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] response = Arrays.copyOf(header, header.length + out.length + err.length);
+        System.arraycopy(out, 0, response, header.length, out.length);
+        System.arraycopy(err, 0, response, header.length + out.length, err.length);
+        return response;
+    }
+
+    static String readLine(InputStream in, int max) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        for (int b = in.read(); b != '\n'; b = in.read()) {
+            if (b < 0) throw new EOFException("connection closed");
+            if (line.size() == max) throw new IOException("header longer than " + max + " bytes");
+            line.write(b);
+        }
+        return new String(line.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
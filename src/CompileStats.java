@@ -0,0 +1,165 @@
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+class CompileStats {
+    enum Phase {
+        PARSE("parse"), RESOLVE("resolve"), FOLD("fold"), GENERATE("generate"), OPTIMIZE("optimize"), WRITE("write");
+
+        final String text;
+
+        Phase(String text) {
+            this.text = text;
+        }
+    }
+
+    private static final Phase[] PHASES = Phase.values();
+    private static final Op[] OPS = Op.values();
+    private static final Command[] COMMANDS = Command.values();
+    private static final com.sun.management.ThreadMXBean THREADS = threads();
+
+    final String source;
+    final boolean enabled;
+    final long[] nanos = new long[PHASES.length], bytes = new long[PHASES.length];
+    final int[] opcodes = new int[OPS.length], commands = new int[COMMANDS.length];
+    int tokens, lookups, nodes, instructions, inlined, framesSaved;
+    private long markNanos, markBytes;
+
+    CompileStats(String source, boolean enabled) {
+        this.source = source;
+        this.enabled = enabled;
+    }
+
+    private static com.sun.management.ThreadMXBean threads() {
+        java.lang.management.ThreadMXBean mx = ManagementFactory.getThreadMXBean();
+        if (!(mx instanceof com.sun.management.ThreadMXBean)) return null;
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) mx;
+        return threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled() ? threads : null;
+    }
+
+    private static long allocated() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    void start() {
+        if (!enabled) return;
+        markNanos = System.nanoTime();
+        markBytes = allocated();
+    }
+
+    void lap(Phase phase) {
+        if (!enabled) return;
+        long now = System.nanoTime(), allocated = allocated();
+        nanos[phase.ordinal()] += now - markNanos;
+        bytes[phase.ordinal()] += allocated - markBytes;
+        markNanos = now;
+        markBytes = allocated;
+    }
+
+    void count(VMCode code) {
+        if (!enabled) return;
+        Arrays.fill(opcodes, 0);
+        Arrays.fill(commands, 0);
+        for (int i = 0; i < code.size; i++) {
+            opcodes[code.ops[i].ordinal()]++;
+            if (code.ops[i] == Op.ARITHMETIC) commands[code.commands[i].ordinal()]++;
+        }
+        instructions = code.size;
+    }
+
+    long totalNanos() {
+        long total = 0;
+        for (long n: nanos) total += n;
+        return total;
+    }
+
+    long totalBytes() {
+        long total = 0;
+        for (long b: bytes) total += b;
+        return total;
+    }
+
+    static CompileStats aggregate(List<CompileStats> files) {
+        CompileStats total = new CompileStats(null, true);
+        for (CompileStats s: files) {
+            for (int i = 0; i < PHASES.length; i++) {
+                total.nanos[i] += s.nanos[i];
+                total.bytes[i] += s.bytes[i];
+            }
+            for (int i = 0; i < OPS.length; i++) total.opcodes[i] += s.opcodes[i];
+            for (int i = 0; i < COMMANDS.length; i++) total.commands[i] += s.commands[i];
+            total.tokens += s.tokens;
+            total.lookups += s.lookups;
+            total.nodes += s.nodes;
+            total.instructions += s.instructions;
+            total.inlined += s.inlined;
+            total.framesSaved += s.framesSaved;
+        }
+        return total;
+    }
+
+    static String toJson(List<CompileStats> files, String options, long wallNanos) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n  \"version\": \"").append(JackCompiler.VERSION).append("\",\n");
+        sb.append("  \"options\": \"").append(escape(options)).append("\",\n");
+        sb.append("  \"wallNanos\": ").append(wallNanos).append(",\n");
+        sb.append("  \"allocationTracked\": ").append(THREADS != null).append(",\n");
+        sb.append("  \"files\": [");
+        for (int i = 0; i < files.size(); i++) {
+            sb.append(i == 0 ? "\n    " : ",\n    ");
+            files.get(i).appendJson(sb);
+        }
+        sb.append(files.isEmpty() ? "],\n" : "\n  ],\n");
+        sb.append("  \"total\": ");
+        aggregate(files).appendJson(sb);
+        return sb.append("\n}\n").toString();
+    }
+
+    void appendJson(StringBuilder sb) {
+        sb.append('{');
+        if (source != null) sb.append("\"source\": \"").append(escape(source)).append("\", ");
+        long parse = nanos[Phase.PARSE.ordinal()];
+        sb.append("\"tokens\": ").append(tokens)
+                .append(", \"tokensPerSecond\": ").append(parse == 0 ? 0 : Math.round(tokens * 1e9 / parse))
+                .append(", \"nodes\": ").append(nodes)
+                .append(", \"symbolLookups\": ").append(lookups)
+                .append(", \"instructions\": ").append(instructions)
+                .append(", \"inlinedCalls\": ").append(inlined)
+                .append(", \"frameSlotsSaved\": ").append(framesSaved)
+                .append(", \"nanos\": ").append(totalNanos())
+                .append(", \"allocatedBytes\": ").append(totalBytes());
+        sb.append(", \"phases\": {");
+        for (Phase p: PHASES) {
+            if (p.ordinal() > 0) sb.append(", ");
+            sb.append('"').append(p.text).append("\": {\"nanos\": ").append(nanos[p.ordinal()])
+                    .append(", \"bytes\": ").append(bytes[p.ordinal()]).append('}');
+        }
+        sb.append("}, \"opcodes\": {");
+        for (Op op: OPS) {
+            if (op.ordinal() > 0) sb.append(", ");
+            if (op != Op.ARITHMETIC) {
+                sb.append('"').append(op.text).append("\": ").append(opcodes[op.ordinal()]);
+                continue;
+            }
+            for (Command c: COMMANDS) {
+                if (c.ordinal() > 0) sb.append(", ");
+                sb.append('"').append(c.text).append("\": ").append(commands[c.ordinal()]);
+            }
+        }
+        sb.append("}}");
+    }
+
+    static String escape(String s) {
+        StringBuilder sb = new StringBuilder(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c < ' ') {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.toString();
+    }
+}
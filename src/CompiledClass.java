@@ -0,0 +1,114 @@
+import java.io.*;
+import java.nio.channels.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+public class CompiledClass {
+    final File source;
+    final String name;
+    final VMCode code;
+    String error;
+    List<String> removed = Collections.emptyList();
+    CompileStats stats;
+    List<String> frames = Collections.emptyList();
+    int nodes, emitted, inlined, framesSaved;
+
+    CompiledClass(File source, String name, VMCode code, String error) {
+        this.source = source;
+        this.name = name;
+        this.code = code;
+        this.error = error;
+    }
+
+    public boolean ok() {
+        return error == null;
+    }
+
+    public String name() {
+        return name;
+    }
+
+    public String error() {
+        return error;
+    }
+
+    public int instructionCount() {
+        return ok() ? code.size : 0;
+    }
+
+    public int inlinedCalls() {
+        return inlined;
+    }
+
+    public int frameSlotsSaved() {
+        return framesSaved;
+    }
+
+    public List<String> frameReport() {
+        return frames;
+    }
+
+    public List<String> removedSubroutines() {
+        return removed;
+    }
+
+    CompileStats stats() {
+        return stats;
+    }
+
+    public void writeTo(WritableByteChannel out) {
+        if (!ok()) throw new IllegalStateException(error);
+        VMWriter vmw = new VMWriter(out);
+        code.writeTo(vmw);
+        vmw.close();
+    }
+
+    public void writeBinaryTo(WritableByteChannel out) {
+        if (!ok()) throw new IllegalStateException(error);
+        BytecodeWriter.write(code, out);
+    }
+
+    public void writeTo(OutputStream out) {
+        writeTo(Channels.newChannel(out));
+    }
+
+    public String vm() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        writeTo(out);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    public String sourceMap() {
+        if (!ok()) throw new IllegalStateException(error);
+        return SourceMap.encode(code, name + ".vm", name + ".jack");
+    }
+
+    void write(Options options) {
+        stats.count(code);
+        stats.start();
+        File output = JackCompiler.outputFile(source, options.outputSuffix());
+        if (options.binary) {
+            BytecodeWriter.write(code, output.getPath());
+        } else {
+            VMWriter vmw = new VMWriter(output.getPath());
+            code.writeTo(vmw);
+            vmw.close();
+        }
+        if (options.sourceMap) SourceMap.write(code, output, source);
+        stats.lap(CompileStats.Phase.WRITE);
+    }
+
+    String report() {
+        int change = code.size - emitted;
+        String report = String.format("%s: %d AST nodes, %d instructions, %d after optimization (%+d, %+.1f%%)",
+                source.getPath(), nodes, emitted, code.size, change, emitted == 0 ? 0.0 : 100.0 * change / emitted);
+        if (inlined > 0) report += "\n  inlined " + inlined + (inlined == 1 ? " call site" : " call sites");
+        for (String frame: frames) report += "\n  frame " + frame;
+        if (!removed.isEmpty()) report += "\n  removed unreachable: " + String.join(", ", removed);
+        return report;
+    }
+
+    public String toString() {
+        return ok() ? name + ": " + code.size + " instructions" : "error: " + error;
+    }
+}
@@ -0,0 +1,117 @@
+class ConstantFolder {
+    private final Ast ast;
+
+    private ConstantFolder(Ast ast) {
+        this.ast = ast;
+    }
+
+    static void fold(Ast ast, int root) {
+        new ConstantFolder(ast).visit(root);
+    }
+
+    private void visit(int n) {
+        for (int c = ast.first[n]; c != Ast.NONE; c = ast.next[c]) {
+            visit(c);
+        }
+        if (ast.kinds[n] == Node.UNARY) {
+            foldUnary(n);
+        } else if (ast.kinds[n] == Node.BINARY) {
+            foldBinary(n);
+        }
+    }
+
+    private void foldUnary(int n) {
+        int operand = ast.first[n];
+        if (ast.kinds[operand] != Node.INT) return;
+        int value = ast.a[operand];
+        setConstant(n, ast.a[n] == '-' ? -value : ~value);
+    }
+
+    private void foldBinary(int n) {
+        int left = ast.first[n];
+        int right = ast.next[left];
+        char operator = (char) ast.a[n];
+        boolean constantLeft = ast.kinds[left] == Node.INT;
+        boolean constantRight = ast.kinds[right] == Node.INT;
+        if (constantLeft && constantRight) {
+            if (operator == '/' && ast.a[right] == 0) return;
+            setConstant(n, fold(operator, ast.a[left], ast.a[right]));
+        } else if (constantRight) {
+            simplify(n, operator, left, ast.a[right]);
+        } else if (constantLeft && isCommutative(operator)) {
+            simplify(n, operator, right, ast.a[left]);
+        } else if (constantLeft && operator == '-' && ast.a[left] == 0) {
+            ast.kinds[n] = Node.UNARY;
+            ast.next[right] = Ast.NONE;
+            ast.first[n] = right;
+        }
+    }
+
+    private void simplify(int n, char operator, int operand, int constant) {
+        switch (operator) {
+            case '+': case '-': case '|':
+                if (constant == 0) replace(n, operand);
+                break;
+            case '*':
+                if (constant == 1) {
+                    replace(n, operand);
+                } else if (constant == 0 && !containsCall(operand)) {
+                    setConstant(n, 0);
+                } else if (constant > 1 && Integer.bitCount(constant) == 1) {
+                    ast.kinds[n] = Node.DOUBLE;
+                    ast.a[n] = Integer.numberOfTrailingZeros(constant);
+                    ast.next[operand] = Ast.NONE;
+                    ast.first[n] = operand;
+                }
+                break;
+            case '/':
+                if (constant == 1) replace(n, operand);
+                break;
+            case '&':
+                if (constant == 0 && !containsCall(operand)) setConstant(n, 0);
+                break;
+        }
+    }
+
+    private void replace(int n, int operand) {
+        ast.become(n, operand);
+    }
+
+    private void setConstant(int n, int value) {
+        ast.kinds[n] = Node.INT;
+        ast.a[n] = (short) value;
+        ast.first[n] = Ast.NONE;
+    }
+
+    private boolean containsCall(int n) {
+        if (ast.kinds[n] == Node.CALL) return true;
+        for (int c = ast.first[n]; c != Ast.NONE; c = ast.next[c]) {
+            if (containsCall(c)) return true;
+        }
+        return false;
+    }
+
+    private static boolean isCommutative(char operator) {
+        switch (operator) {
+            case '+': case '*': case '&': case '|': case '=':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static int fold(char operator, int a, int b) {
+        switch (operator) {
+            case '+': return (short) (a + b);
+            case '-': return (short) (a - b);
+            case '*': return (short) (a * b);
+            case '/': return (short) (a / b);
+            case '&': return a & b;
+            case '|': return a | b;
+            case '<': return a < b ? -1 : 0;
+            case '>': return a > b ? -1 : 0;
+            case '=': return a == b ? -1 : 0;
+            default: throw new IllegalArgumentException("unknown operator " + operator);
+        }
+    }
+}
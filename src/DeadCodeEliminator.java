@@ -0,0 +1,34 @@
+import java.util.*;
+
+class DeadCodeEliminator {
+    static final String BOOT = "Sys.init", ENTRY = "Main.main";
+
+    static Set<String> reachable(List<VMCode> program) {
+        Map<String, List<String>> calls = new HashMap<String, List<String>>();
+        for (VMCode code: program) {
+            List<String> targets = null;
+            for (int i = 0; i < code.size; i++) {
+                if (code.ops[i] == Op.FUNCTION) {
+                    targets = new ArrayList<String>();
+                    calls.put(code.names[i], targets);
+                } else if (code.ops[i] == Op.CALL && targets != null) {
+                    targets.add(code.names[i]);
+                }
+            }
+        }
+        if (!calls.containsKey(BOOT) && !calls.containsKey(ENTRY)) return null;
+        Set<String> reached = new HashSet<String>();
+        Deque<String> work = new ArrayDeque<String>();
+        for (String root: new String[] {BOOT, ENTRY}) {
+            if (calls.containsKey(root) && reached.add(root)) work.push(root);
+        }
+        while (!work.isEmpty()) {
+            List<String> targets = calls.get(work.pop());
+            if (targets == null) continue;
+            for (String target: targets) {
+                if (reached.add(target)) work.push(target);
+            }
+        }
+        return reached;
+    }
+}
@@ -0,0 +1,29 @@
+import java.io.IOException;
+import java.nio.file.*;
+
+final class Diagnostic {
+    final int line, column;
+    final String message;
+
+    Diagnostic(int line, int column, String message) {
+        this.line = line;
+        this.column = column;
+        this.message = message;
+    }
+
+    String format(String file) {
+        return (file == null ? "" : file + ":") + line + ":" + column + ": error: " + message;
+    }
+
+    static String format(String file, IOException e) {
+        String reason = e.getMessage() == null ? e.getClass().getSimpleName() : e.getMessage();
+        if (e instanceof FileSystemException) {
+            FileSystemException fse = (FileSystemException) e;
+            if (fse.getFile() != null) file = fse.getFile();
+            reason = e instanceof NoSuchFileException ? "no such file"
+                    : e instanceof AccessDeniedException ? "permission denied"
+                    : fse.getReason() != null ? fse.getReason() : e.getClass().getSimpleName();
+        }
+        return file + ": error: " + reason;
+    }
+}
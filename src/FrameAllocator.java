@@ -0,0 +1,145 @@
+import java.util.*;
+
+class FrameAllocator {
+    private static final int FIRST_TEMP = 2, LAST_TEMP = 7, MAX_LOCALS = 64;
+
+    static int allocate(VMCode code, List<String> report) {
+        int saved = 0;
+        for (int start = 0; start < code.size; ) {
+            int end = code.functionEnd(start);
+            if (code.ops[start] == Op.FUNCTION) saved += allocate(code, start, end, report);
+            start = end;
+        }
+        return saved;
+    }
+
+    private static int allocate(VMCode code, int start, int end, List<String> report) {
+        int n = code.args[start];
+        if (n == 0 || n > MAX_LOCALS) return 0;
+        Map<String, Integer> labels = new HashMap<String, Integer>();
+        for (int i = start + 1; i < end; i++) {
+            if (code.ops[i] == Op.LABEL) labels.put(code.names[i], i);
+        }
+        int[] targets = new int[end - start];
+        int usedTemps = 0;
+        for (int i = start + 1; i < end; i++) {
+            Op op = code.ops[i];
+            if (isLocal(code, i) && code.args[i] >= n) return 0;
+            if (op == Op.GOTO || op == Op.IF_GOTO) {
+                Integer target = labels.get(code.names[i]);
+                if (target == null) return 0;
+                targets[i - start] = target;
+            }
+            if ((op == Op.PUSH || op == Op.POP) && code.segments[i] == Segment.TEMP && code.args[i] <= LAST_TEMP) {
+                usedTemps |= 1 << code.args[i];
+            }
+        }
+
+        int[] blockOf = new int[end - start + 1];
+        int blocks = 0;
+        for (int i = start + 1; i < end; i++) {
+            Op previous = code.ops[i - 1];
+            if (i == start + 1 || code.ops[i] == Op.LABEL || previous == Op.GOTO || previous == Op.IF_GOTO
+                    || previous == Op.RETURN) {
+                blocks++;
+            }
+            blockOf[i - start] = blocks - 1;
+        }
+        if (blocks == 0) return 0;
+        int[] first = new int[blocks + 1];
+        for (int i = end - 1; i > start; i--) first[blockOf[i - start]] = i;
+        first[blocks] = end;
+        long[] use = new long[blocks], def = new long[blocks], in = new long[blocks], out = new long[blocks];
+        for (int b = 0; b < blocks; b++) {
+            for (int i = first[b]; i < first[b + 1]; i++) {
+                if (!isLocal(code, i)) continue;
+                long bit = 1L << code.args[i];
+                if (code.ops[i] == Op.PUSH && (def[b] & bit) == 0) use[b] |= bit;
+                if (code.ops[i] == Op.POP) def[b] |= bit;
+            }
+        }
+        boolean changed = true;
+        while (changed) {
+            changed = false;
+            for (int b = blocks - 1; b >= 0; b--) {
+                int last = first[b + 1] - 1;
+                Op op = code.ops[last];
+                long live = op != Op.GOTO && op != Op.RETURN && b + 1 < blocks ? in[b + 1] : 0;
+                if (op == Op.GOTO || op == Op.IF_GOTO) live |= in[blockOf[targets[last - start] - start]];
+                out[b] = live;
+                live = use[b] | (live & ~def[b]);
+                if (live != in[b]) {
+                    in[b] = live;
+                    changed = true;
+                }
+            }
+        }
+
+        long[] interference = new long[n];
+        long used = 0, crossesCall = 0, liveAtEntry = in[0];
+        for (int b = 0; b < blocks; b++) {
+            long live = out[b];
+            for (int i = first[b + 1] - 1; i >= first[b]; i--) {
+                if (code.ops[i] == Op.CALL) {
+                    crossesCall |= live;
+                } else if (code.ops[i] == Op.PUSH && code.segments[i] == Segment.LOCAL) {
+                    used |= 1L << code.args[i];
+                    live |= 1L << code.args[i];
+                } else if (code.ops[i] == Op.POP && code.segments[i] == Segment.LOCAL) {
+                    int d = code.args[i];
+                    if ((live & 1L << d) == 0) {
+                        code.set(i, Op.POP, Segment.TEMP, null, 0, null);
+                        continue;
+                    }
+                    live &= ~(1L << d);
+                    interference[d] |= live;
+                    for (long rest = live; rest != 0; rest &= rest - 1) {
+                        interference[Long.numberOfTrailingZeros(rest)] |= 1L << d;
+                    }
+                }
+            }
+        }
+
+        int[] colors = new int[n];
+        long[] byColor = new long[n + LAST_TEMP + 1];
+        int promoted = 0, frame = 0;
+        for (int v = 0; v < n; v++) {
+            colors[v] = -1;
+            if ((used & 1L << v) == 0 || ((liveAtEntry | crossesCall) & 1L << v) != 0) continue;
+            for (int t = FIRST_TEMP; t <= LAST_TEMP && colors[v] < 0; t++) {
+                if ((usedTemps & 1 << t) == 0 && (byColor[t] & interference[v]) == 0) {
+                    colors[v] = t;
+                    byColor[t] |= 1L << v;
+                    promoted++;
+                }
+            }
+        }
+        for (int v = 0; v < n; v++) {
+            if ((used & 1L << v) == 0 || colors[v] >= 0) continue;
+            int s = 0;
+            while ((byColor[LAST_TEMP + 1 + s] & interference[v]) != 0) s++;
+            colors[v] = LAST_TEMP + 1 + s;
+            byColor[colors[v]] |= 1L << v;
+            frame = Math.max(frame, s + 1);
+        }
+        for (int i = start + 1; i < end; i++) {
+            if (!isLocal(code, i)) continue;
+            int color = colors[code.args[i]];
+            if (color <= LAST_TEMP) {
+                code.set(i, code.ops[i], Segment.TEMP, null, color, null);
+            } else {
+                code.args[i] = color - LAST_TEMP - 1;
+            }
+        }
+        code.args[start] = frame;
+        if (report != null && frame < n) {
+            report.add(code.names[start] + ": " + n + " -> " + frame + (frame == 1 ? " local" : " locals")
+                    + (promoted > 0 ? ", " + promoted + " in temp" : ""));
+        }
+        return n - frame;
+    }
+
+    private static boolean isLocal(VMCode code, int i) {
+        return (code.ops[i] == Op.PUSH || code.ops[i] == Op.POP) && code.segments[i] == Segment.LOCAL;
+    }
+}
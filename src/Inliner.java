@@ -0,0 +1,126 @@
+import java.util.*;
+
+class Inliner {
+    static final int BUDGET = 12;
+    private static final int FIRST_TEMP = 2, TEMPS = 6;
+
+    private static class Candidate {
+        final String className;
+        final boolean method, usesStatics;
+        final int locals, maxArgument;
+        final VMCode body;
+
+        Candidate(String className, boolean method, boolean usesStatics, int locals, int maxArgument, VMCode body) {
+            this.className = className;
+            this.method = method;
+            this.usesStatics = usesStatics;
+            this.locals = locals;
+            this.maxArgument = maxArgument;
+            this.body = body;
+        }
+    }
+
+    static int[] inline(List<VMCode> program) {
+        int[] inlined = new int[program.size()];
+        Map<String, Candidate> candidates = new HashMap<String, Candidate>();
+        for (VMCode code: program) {
+            for (int start = 0; start < code.size; ) {
+                int end = code.functionEnd(start);
+                Candidate c = candidate(code, start, end);
+                if (c != null) candidates.put(code.names[start], c);
+                start = end;
+            }
+        }
+        if (candidates.isEmpty()) return inlined;
+        for (int i = 0; i < inlined.length; i++) inlined[i] = expand(program.get(i), candidates);
+        return inlined;
+    }
+
+    private static Candidate candidate(VMCode code, int start, int end) {
+        if (code.ops[start] != Op.FUNCTION || code.ops[end - 1] != Op.RETURN) return null;
+        boolean method = end - start >= 4 && code.isPush(start + 1, Segment.ARGUMENT) && code.args[start + 1] == 0
+                && code.isPop(start + 2, Segment.POINTER) && code.args[start + 2] == 0;
+        int from = method ? start + 3 : start + 1;
+        if (end - 1 - from > BUDGET) return null;
+        boolean usesStatics = false;
+        int maxArgument = -1;
+        for (int i = from; i < end - 1; i++) {
+            switch (code.ops[i]) {
+                case PUSH:
+                case POP:
+                    Segment s = code.segments[i];
+                    if (s == Segment.STATIC) usesStatics = true;
+                    if (s == Segment.ARGUMENT) maxArgument = Math.max(maxArgument, code.args[i]);
+                    if (method && (s == Segment.THAT || s == Segment.POINTER && (code.args[i] == 1 || code.ops[i] == Op.POP))) return null;
+                    if (!method && (s == Segment.THIS || s == Segment.POINTER && code.args[i] == 0)) return null;
+                    if (s == Segment.ARGUMENT && code.ops[i] == Op.POP && method && code.args[i] == 0) return null;
+                    if (s == Segment.TEMP && code.args[i] >= FIRST_TEMP) return null;
+                    break;
+                case ARITHMETIC:
+                    break;
+                default:
+                    return null;
+            }
+        }
+        String name = code.names[start];
+        VMCode body = new VMCode(end - from);
+        for (int i = from; i < end - 1; i++) body.append(code, i);
+        return new Candidate(name.substring(0, name.indexOf('.')), method, usesStatics, code.args[start], maxArgument, body);
+    }
+
+    private static int expand(VMCode code, Map<String, Candidate> candidates) {
+        VMCode out = null;
+        String className = null;
+        int inlined = 0;
+        for (int i = 0; i < code.size; i++) {
+            if (code.ops[i] == Op.FUNCTION) className = code.names[i].substring(0, code.names[i].indexOf('.'));
+            Candidate c = code.ops[i] == Op.CALL ? candidates.get(code.names[i]) : null;
+            int args = code.args[i];
+            if (c == null || c.usesStatics && !c.className.equals(className) || c.maxArgument >= args
+                    || c.method && args == 0 || args - (c.method ? 1 : 0) + c.locals > TEMPS) {
+                if (out != null) out.append(code, i);
+                continue;
+            }
+            if (out == null) {
+                out = new VMCode(code.size * 2);
+                for (int j = 0; j < i; j++) out.append(code, j);
+            }
+            out.position = code.positions[i];
+            int first = c.method ? 1 : 0;
+            for (int a = args - 1; a >= first; a--) out.writePop(Segment.TEMP, FIRST_TEMP + a - first);
+            if (c.method) out.writePop(Segment.POINTER, 1);
+            int localBase = FIRST_TEMP + args - first;
+            for (int l = 0; l < c.locals; l++) {
+                out.writePush(Segment.CONSTANT, 0);
+                out.writePop(Segment.TEMP, localBase + l);
+            }
+            VMCode body = c.body;
+            for (int b = 0; b < body.size; b++) {
+                if (body.ops[b] != Op.PUSH && body.ops[b] != Op.POP) {
+                    out.add(body.ops[b], null, body.commands[b], body.args[b], body.names[b]);
+                    continue;
+                }
+                Segment s = body.segments[b];
+                int index = body.args[b];
+                if (s == Segment.ARGUMENT && c.method && index == 0) {
+                    s = Segment.POINTER;
+                    index = 1;
+                } else if (s == Segment.ARGUMENT) {
+                    s = Segment.TEMP;
+                    index = FIRST_TEMP + index - first;
+                } else if (s == Segment.LOCAL) {
+                    s = Segment.TEMP;
+                    index = localBase + index;
+                } else if (s == Segment.THIS) {
+                    s = Segment.THAT;
+                } else if (s == Segment.POINTER && c.method) {
+                    index = 1;
+                }
+                out.add(body.ops[b], s, null, index, null);
+            }
+            inlined++;
+        }
+        if (out != null) code.replace(out);
+        return inlined;
+    }
+}
@@ -1,21 +1,330 @@
 import java.io.*;
-import java.util.Arrays;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class JackCompiler {
-    public static void main(String[] args) throws FileNotFoundException {
-        File dir = new File(args[0]);
+    static final String VERSION = "1.1";
+
+    public static void main(String[] args) throws InterruptedException, IOException {
+        Options options;
+        try {
+            options = Options.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(Options.USAGE);
+            System.exit(2);
+            return;
+        }
+        if (options.daemon) {
+            try {
+                new CompileServer(CompileServer.socket(options.socket)).serve();
+            } catch (IOException e) {
+                System.err.println("jackc daemon: " + e.getMessage());
+                System.exit(1);
+            }
+            return;
+        }
+        int status = run(options, System.in, new FileOutputStream(FileDescriptor.out).getChannel(), System.err, null);
+        if (status != 0) System.exit(status);
+    }
+
+    static int run(Options options, InputStream in, WritableByteChannel out, PrintStream err,
+            Map<String, String> stamps) throws InterruptedException, IOException {
+        if (options.input.equals("-")) return compileStream(options, in, out, err);
+        File input = new File(options.input);
+        List<File> sources = sourceFiles(input);
+        BuildCache cache = null;
+        if (options.incremental) {
+            File dir = input.isDirectory() ? input : input.getAbsoluteFile().getParentFile();
+            cache = new BuildCache(dir, options.fingerprint(), options.outputSuffix());
+            List<File> stale = cache.staleSources(sources, input.isDirectory());
+            if (!options.wholeProgram || (stale.isEmpty() && !cache.pruned)) sources = stale;
+        }
+        if (stamps != null) sources = changedSources(sources, options, stamps);
+        long start = System.nanoTime();
+        boolean persist = options.incremental || stamps != null;
+        if (input.isDirectory() && (persist || !sources.isEmpty())) {
+            options.index = ProgramIndex.build(input, persist);
+            if (!options.index.changed.isEmpty()) sources = withReferences(sources, sourceFiles(input), options);
+            if (options.verbose) {
+                err.printf("%s: indexed %d classes, %d subroutines (%d files scanned, %d cached) in %.1f ms%n",
+                        input.getPath(), options.index.classCount(), options.index.subroutineCount(),
+                        options.index.scanned, options.index.cached, (System.nanoTime() - start) / 1e6);
+            }
+        }
+        List<CompiledClass> results = compileFiles(sources, options);
+        if (options.wholeProgram && !results.isEmpty() && allOk(results)) {
+            String warning = link(results, options);
+            if (warning != null) err.println("warning: " + warning);
+            for (CompiledClass c: results) write(c, options);
+        }
+        long wallNanos = System.nanoTime() - start;
+        boolean failed = false;
+        for (int i = 0; i < sources.size(); i++) {
+            CompiledClass result = results.get(i);
+            File source = sources.get(i);
+            if (!result.ok()) {
+                err.println(result.error);
+                failed = true;
+                if (cache != null) cache.forget(source);
+                if (stamps != null) stamps.remove(source.getPath());
+            } else {
+                if (options.verbose) err.println(result.report());
+                if (cache != null) cache.record(source);
+                if (stamps != null) stamps.put(source.getPath(), stamp(source, options));
+            }
+        }
+        if (cache != null) cache.save();
+        if (options.stats) {
+            List<CompileStats> stats = new ArrayList<CompileStats>();
+            for (CompiledClass result: results) {
+                if (result.ok()) stats.add(result.stats);
+            }
+            writeStats(options, CompileStats.toJson(stats, options.fingerprint(), wallNanos), err);
+        }
+        return failed ? 1 : 0;
+    }
+
+    private static void writeStats(Options options, String json, PrintStream err) throws IOException {
+        if (options.statsFile == null) {
+            err.print(json);
+        } else {
+            Files.write(Paths.get(options.statsFile), json.getBytes(StandardCharsets.UTF_8));
+        }
+    }
+
+    private static List<File> changedSources(List<File> sources, Options options, Map<String, String> stamps) {
+        List<File> changed = new ArrayList<File>();
+        for (File f: sources) {
+            if (!stamp(f, options).equals(stamps.get(f.getPath()))) changed.add(f);
+        }
+        return options.wholeProgram && !changed.isEmpty() ? sources : changed;
+    }
+
+    private static List<File> withReferences(List<File> sources, List<File> all, Options options) {
+        if (sources.size() == all.size()) return sources;
+        Set<File> stale = new HashSet<File>(sources);
+        List<File> result = new ArrayList<File>();
+        for (File f: all) {
+            if (stale.contains(f) || ProgramIndex.references(f, options.index.changed)) result.add(f);
+        }
+        return options.wholeProgram && !result.isEmpty() ? all : result;
+    }
+
+    private static String stamp(File source, Options options) {
+        return options.fingerprint() + " " + source.lastModified() + " " + source.length() + " "
+                + outputFile(source, options.outputSuffix()).lastModified();
+    }
+
+    static File outputFile(File source) {
+        return outputFile(source, ".vm");
+    }
+
+    static File outputFile(File source, String suffix) {
+        String path = source.getPath();
+        return new File(path.substring(0, path.length() - ".jack".length()) + suffix);
+    }
+
+    static List<File> sourceFiles(File dir) {
         File[] inputFiles;
         if (dir.isDirectory()) {
             inputFiles = dir.listFiles();
         } else {
             inputFiles = new File[] {dir};
         }
+        List<File> sources = new ArrayList<File>();
+        if (inputFiles == null) return sources;
         for (File f: inputFiles) {
-            if (!f.getName().endsWith(".jack")) continue;
-            JackTokenizer jt = new JackTokenizer(f.getPath());
-            VMWriter vmw = new VMWriter(f.getPath().replace(".jack", ".vm"));
-            CompilationEngine ce = new CompilationEngine(jt, vmw);
-            vmw.close();
+            if (f.getName().endsWith(".jack")) sources.add(f);
+        }
+        Collections.sort(sources);
+        return sources;
+    }
+
+    static List<CompiledClass> compileFiles(List<File> sources, final Options options) throws InterruptedException {
+        List<Callable<CompiledClass>> tasks = new ArrayList<Callable<CompiledClass>>();
+        for (final File f: sources) {
+            tasks.add(new Callable<CompiledClass>() {
+                public CompiledClass call() {
+                    return compileFile(f, options);
+                }
+            });
+        }
+        return compileAll(tasks, options.jobs);
+    }
+
+    private static List<CompiledClass> compileAll(List<Callable<CompiledClass>> tasks, int jobs) throws InterruptedException {
+        List<CompiledClass> classes = new ArrayList<CompiledClass>();
+        if (jobs <= 1 || tasks.size() <= 1) {
+            for (Callable<CompiledClass> task: tasks) {
+                try {
+                    classes.add(task.call());
+                } catch (Exception e) {
+                    classes.add(new CompiledClass(null, null, null, e.toString()));
+                }
+            }
+            return classes;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(jobs, tasks.size()));
+        try {
+            for (Future<CompiledClass> future: pool.invokeAll(tasks)) {
+                try {
+                    classes.add(future.get());
+                } catch (ExecutionException e) {
+                    classes.add(new CompiledClass(null, null, null, e.getCause().toString()));
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+        return classes;
+    }
+
+    static CompiledClass compileFile(File f, Options options) {
+        CompileStats stats = new CompileStats(f.getPath(), options.stats);
+        CompiledClass c;
+        try (JackTokenizer jt = new JackTokenizer(f.getPath())) {
+            c = compiled(f, new CompilationEngine(jt, options, stats));
+        } catch (CompileError e) {
+            return new CompiledClass(f, null, null, e.format(f.getPath()));
+        } catch (IOException e) {
+            return new CompiledClass(f, null, null, Diagnostic.format(f.getPath(), e));
+        } catch (UncheckedIOException e) {
+            return new CompiledClass(f, null, null, Diagnostic.format(f.getPath(), e.getCause()));
+        } catch (RuntimeException e) {
+            return new CompiledClass(f, null, null, f.getPath() + ": " + e);
+        }
+        if (!options.wholeProgram) write(c, options);
+        return c;
+    }
+
+    private static void write(CompiledClass c, Options options) {
+        try {
+            c.write(options);
+        } catch (UncheckedIOException e) {
+            c.error = Diagnostic.format(c.source.getPath(), e.getCause());
+        } catch (RuntimeException e) {
+            c.error = c.source.getPath() + ": " + e;
+        }
+    }
+
+    public static CompiledClass compile(CharSequence source, String... options) {
+        return compile(source, Options.flags(options));
+    }
+
+    public static List<CompiledClass> compile(List<? extends CharSequence> sources, String... options)
+            throws InterruptedException {
+        final Options parsed = Options.flags(options);
+        if (parsed.wholeProgram) parsed.index = ProgramIndex.of(sources);
+        List<Callable<CompiledClass>> tasks = new ArrayList<Callable<CompiledClass>>();
+        for (final CharSequence source: sources) {
+            tasks.add(new Callable<CompiledClass>() {
+                public CompiledClass call() {
+                    return compile(source, parsed);
+                }
+            });
+        }
+        List<CompiledClass> classes = compileAll(tasks, parsed.jobs);
+        if (parsed.wholeProgram && allOk(classes)) link(classes, parsed);
+        return classes;
+    }
+
+    static CompiledClass compile(CharSequence source, Options options) {
+        try {
+            return compiled(null, new CompilationEngine(new JackTokenizer(source), options,
+                    new CompileStats(null, options.stats)));
+        } catch (CompileError e) {
+            return new CompiledClass(null, null, null, e.format(null));
+        } catch (RuntimeException e) {
+            return new CompiledClass(null, null, null, e.toString());
+        }
+    }
+
+    private static CompiledClass compiled(File source, CompilationEngine ce) {
+        CompiledClass c = new CompiledClass(source, ce.className(), ce.code(), null);
+        c.stats = ce.stats();
+        c.nodes = ce.nodeCount();
+        c.emitted = ce.emitted;
+        c.inlined = ce.inlined;
+        c.framesSaved = ce.framesSaved;
+        c.frames = ce.frames;
+        return c;
+    }
+
+    private static boolean allOk(List<CompiledClass> classes) {
+        for (CompiledClass c: classes) {
+            if (!c.ok()) return false;
+        }
+        return true;
+    }
+
+    static String link(List<CompiledClass> classes, Options options) {
+        List<VMCode> program = new ArrayList<VMCode>();
+        for (CompiledClass c: classes) {
+            program.add(c.code);
+            c.frames = new ArrayList<String>();
+        }
+        if (options.optimize) {
+            int[] inlined = Inliner.inline(program);
+            for (int i = 0; i < classes.size(); i++) {
+                CompiledClass c = classes.get(i);
+                if (inlined[i] > 0) PeepholeOptimizer.optimize(c.code);
+                c.inlined += inlined[i];
+                c.framesSaved = FrameAllocator.allocate(c.code, c.frames);
+            }
+        }
+        Set<String> reachable = DeadCodeEliminator.reachable(program);
+        for (CompiledClass c: classes) {
+            c.stats.inlined = c.inlined;
+            c.stats.framesSaved = c.framesSaved;
+            if (reachable != null) c.removed = c.code.removeFunctions(reachable);
+            if (options.labelOffsets) c.code.numberLabels();
+            c.stats.count(c.code);
+        }
+        return reachable == null ? "no " + DeadCodeEliminator.BOOT + " or " + DeadCodeEliminator.ENTRY + ", keeping all subroutines" : null;
+    }
+
+    static int compileStream(Options options, InputStream in, WritableByteChannel out, PrintStream err) {
+        try {
+            long start = System.nanoTime();
+            CompileStats stats = new CompileStats("-", options.stats);
+            CompilationEngine ce;
+            try (JackTokenizer jt = new JackTokenizer(in)) {
+                ce = new CompilationEngine(jt, options, stats);
+            }
+            if (options.binary) {
+                BytecodeWriter.write(ce.code(), out);
+            } else {
+                VMWriter vmw = new VMWriter(out);
+                ce.code().writeTo(vmw);
+                vmw.close();
+            }
+            stats.lap(CompileStats.Phase.WRITE);
+            if (options.stats) {
+                writeStats(options, CompileStats.toJson(Collections.singletonList(stats), options.fingerprint(),
+                        System.nanoTime() - start), err);
+            }
+            if (options.verbose) {
+                err.printf("-: %d AST nodes, %d instructions, %d after optimization, %d inlined call sites, %d frame slots saved%n",
+                        ce.nodeCount(), ce.emitted, ce.instructionCount(), ce.inlined, ce.framesSaved);
+                for (String frame: ce.frames) err.println("  frame " + frame);
+            }
+            return 0;
+        } catch (CompileError e) {
+            err.println(e.format("-"));
+            return 1;
+        } catch (IOException e) {
+            err.println(Diagnostic.format("-", e));
+            return 1;
+        } catch (UncheckedIOException e) {
+            err.println(Diagnostic.format("-", e.getCause()));
+            return 1;
+        } catch (RuntimeException e) {
+            err.println("-: " + e);
+            return 1;
         }
     }
 }
@@ -1,105 +1,320 @@
 import java.io.*;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.util.Arrays;
 
-public class JackTokenizer {
-	String token, code;
-	private StringTokenizer st;
-	private Scanner sc;
-	private Set<String> keywords, symbols;
+public class JackTokenizer implements AutoCloseable {
+	private static final String[] symbols = new String[128];
 
-	public JackTokenizer(String fileName) {
+	static {
+		for (char c: "{}()[].,;+-*/&|<>=~".toCharArray()) {
+			symbols[c] = String.valueOf(c).intern();
+		}
+	}
+
+	private static final int SPACE = 0, LINE_COMMENT = 1, BLOCK_COMMENT = 2, BLOCK_STAR = 3;
+	private static final ThreadLocal<ByteBuffer> buffers = new ThreadLocal<ByteBuffer>();
+
+	String token;
+	private ReadableByteChannel in;
+	private boolean closeInput;
+	private ByteBuffer bytes;
+	private CharsetDecoder decoder;
+	private boolean endOfInput;
+	private long sizeHint;
+	private char[] code = new char[8192];
+	private int pos, limit, mark;
+	private int line = 1, lineStart, tokenLine, tokenColumn, commentLine, commentColumn;
+	private boolean terminated, inComment;
+	private TokenKind type;
+	private Keyword keyword;
+	private char symbol;
+	private int intValue;
+	private String[] names = new String[256];
+	private int nameCount;
+	private int tokens;
+
+	public JackTokenizer(String fileName) throws IOException {
+		FileChannel ch = FileChannel.open(Paths.get(fileName));
 		try {
-			sc = new Scanner(new File(fileName));
-			token = code = null;
-			st = null;
-			initialKeywords();
-			initialSymbols();
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
+			sizeHint = ch.size();
+		} catch (IOException e) {
+			ch.close();
+			throw e;
 		}
+		open(ch, true);
 	}
 
-	private void initialKeywords() {
-		keywords = new HashSet<String>();
-		String[] s = new String[] {"class", "constructor", "function", "method", "field", "static", "var", "int",
-				"char", "boolean", "void", "true", "false", "null", "this", "let", "do", "if", "else", "while",
-				"return"};
-		Collections.addAll(keywords, s);
+	public JackTokenizer(CharSequence source) {
+		code = source.toString().toCharArray();
+		limit = code.length;
+		sizeHint = limit;
+		endOfInput = true;
 	}
 
-	private void initialSymbols() {
-		symbols = new HashSet<String>();
-		String[] s = new String[] {"{", "}", "(", ")", "[", "]", ".", ",", ";", "+", "-", "*", "/", "&", "|",
-				"<", ">", "=", "~"};
-		Collections.addAll(symbols, s);
+	public JackTokenizer(InputStream in) {
+		open(Channels.newChannel(in), false);
+	}
+
+	public JackTokenizer(ReadableByteChannel in) {
+		open(in, false);
+	}
+
+	private void open(ReadableByteChannel in, boolean closeInput) {
+		this.in = in;
+		this.closeInput = closeInput;
+		bytes = buffers.get();
+		if (bytes == null) {
+			bytes = ByteBuffer.allocateDirect(1 << 16);
+		} else {
+			buffers.remove();
+			bytes.clear();
+		}
+		decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+	}
+
+	int sourceLength() {
+		return (int) Math.min(sizeHint, Integer.MAX_VALUE);
+	}
+
+	private boolean has(int n) {
+		while (pos + n > limit) {
+			if (!fill()) return false;
+		}
+		return true;
+	}
+
+	private boolean fill() {
+		if (in == null) return false;
+		if (mark > 0) {
+			System.arraycopy(code, mark, code, 0, limit - mark);
+			pos -= mark;
+			limit -= mark;
+			lineStart -= mark;
+			mark = 0;
+		}
+		if (limit == code.length) code = Arrays.copyOf(code, code.length * 2);
+		CharBuffer out = CharBuffer.wrap(code, limit, code.length - limit);
+		try {
+			while (out.position() == limit && in != null) {
+				if (!endOfInput && in.read(bytes) < 0) endOfInput = true;
+				bytes.flip();
+				decode(out);
+				boolean drained = !bytes.hasRemaining();
+				bytes.compact();
+				if (endOfInput && drained) release();
+			}
+		} catch (IOException e) {
+			try {
+				close();
+			} catch (IOException suppressed) {
+				e.addSuppressed(suppressed);
+			}
+			throw new UncheckedIOException(e);
+		}
+		boolean filled = out.position() > limit;
+		limit = out.position();
+		return filled;
+	}
+
+	private void decode(CharBuffer out) {
+		int from = bytes.position(), end = bytes.limit(), to = out.position();
+		while (from < end && to < code.length) {
+			byte b = bytes.get(from);
+			if (b >= 0) {
+				code[to++] = (char) b;
+				from++;
+				continue;
+			}
+			int run = from;
+			while (run < end && bytes.get(run) < 0) run++;
+			boolean complete = endOfInput || run < end;
+			bytes.limit(run).position(from);
+			out.position(to);
+			CoderResult result = decoder.decode(bytes, out, complete);
+			bytes.limit(end);
+			from = bytes.position();
+			to = out.position();
+			decoder.reset();
+			if (result.isOverflow() || from < run) break;
+		}
+		bytes.position(from);
+		out.position(to);
+	}
+
+	private void release() throws IOException {
+		ReadableByteChannel channel = in;
+		in = null;
+		buffers.set(bytes);
+		bytes = null;
+		if (closeInput) channel.close();
+	}
+
+	public void close() throws IOException {
+		if (in != null) release();
 	}
 
 	public boolean hasMoreTokens() {
-		return sc.hasNextLine() || (st != null && st.hasMoreTokens());
+		skipWhitespaceAndComments();
+		return has(1);
 	}
-	
+
 	public void advance() {
-		if (st != null && st.hasMoreTokens()) {
-			token = st.nextToken();
-			if (token.startsWith("\"")) advanceStringConstant();
+		skipWhitespaceAndComments();
+		if (!has(1)) {
+			token = null;
+			type = null;
+			if (inComment) {
+				tokenLine = commentLine;
+				tokenColumn = commentColumn;
+			}
 			return;
 		}
-		skipComments();
-		if (code == null) return;
-		addSpaceDelimiterToCode();
-		st = new StringTokenizer(code);
-		if (st.hasMoreTokens()) {
-			token = st.nextToken();
-			if (token.startsWith("\"")) advanceStringConstant();
+		tokens++;
+		tokenLine = line;
+		tokenColumn = pos - lineStart + 1;
+		char c = code[pos];
+		keyword = null;
+		symbol = 0;
+		if (c == '"') {
+			pos++;
+			while ((pos < limit || has(1)) && code[pos] != '"' && code[pos] != '\n') pos++;
+			terminated = has(1) && code[pos] == '"';
+			if (terminated) pos++;
+			type = TokenKind.STRING_CONSTANT;
+		} else if (c >= '0' && c <= '9') {
+			int value = 0;
+			while ((pos < limit || has(1)) && code[pos] >= '0' && code[pos] <= '9') {
+				if (value <= Short.MAX_VALUE) value = value * 10 + (code[pos] - '0');
+				pos++;
+			}
+			intValue = value;
+			type = TokenKind.INTEGER_CONSTANT;
+		} else if (isIdentifierPart(c)) {
+			while ((pos < limit || has(1)) && isIdentifierPart(code[pos])) pos++;
+			keyword = Keyword.lookup(code, mark, pos - mark);
+			if (keyword != null) {
+				type = TokenKind.KEYWORD;
+				token = keyword.text;
+				return;
+			}
+			type = TokenKind.IDENTIFIER;
+			token = intern(mark, pos - mark);
+			return;
+		} else {
+			pos++;
+			type = TokenKind.SYMBOL;
+			symbol = c;
+			if (c < 128 && symbols[c] != null) {
+				token = symbols[c];
+				return;
+			}
 		}
+		token = new String(code, mark, pos - mark);
 	}
 
-	private void advanceStringConstant() {
-		do {
-			token = token + " " + st.nextToken();
-		} while (!token.endsWith("\""));
+	private String intern(int start, int length) {
+		int h = 0;
+		for (int i = start; i < start + length; i++) h = 31 * h + code[i];
+		int mask = names.length - 1;
+		int i = (h ^ (h >>> 16)) & mask;
+		for (String name; (name = names[i]) != null; i = (i + 1) & mask) {
+			if (name.length() == length && matches(name, start)) return name;
+		}
+		String name = new String(code, start, length);
+		names[i] = name;
+		if (2 * ++nameCount > names.length) rehash();
+		return name;
 	}
 
-	private void skipComments() {
-		do  {
-			if (!sc.hasNextLine()) {
-				token = code = null;
-				return;
-			}
-			code = sc.nextLine().trim();
-		} while (code.length() == 0 || code.startsWith("/")  || code.startsWith("*"));
-		int commentIdx = code.indexOf("//");
-		if (commentIdx != -1){
-			code = code.substring(0, commentIdx).trim();
+	private boolean matches(String name, int start) {
+		for (int i = 0; i < name.length(); i++) {
+			if (name.charAt(i) != code[start + i]) return false;
 		}
+		return true;
 	}
 
-	private void addSpaceDelimiterToCode() {
-		for (String symbol: symbols) {
-			code = code.replaceAll(String.format("\\%s", symbol), " " + symbol + " ");
+	private void rehash() {
+		String[] old = names;
+		names = new String[old.length * 2];
+		int mask = names.length - 1;
+		for (String name: old) {
+			if (name == null) continue;
+			int h = name.hashCode();
+			int i = (h ^ (h >>> 16)) & mask;
+			while (names[i] != null) i = (i + 1) & mask;
+			names[i] = name;
 		}
 	}
 
-	public String tokenType() {
-		if (keywords.contains(token)) {
-			return "keyword";
-		} else if (symbols.contains(token)) {
-			return "symbol";
-		} else if (token.matches("[0-9]+")) {
-			return "integerConstant";
-		} else if (token.matches("\".*\"")) {
-			return "stringConstant";
-		} else {
-			return "identifier";
+	private void skipWhitespaceAndComments() {
+		int state = SPACE;
+		while (true) {
+			mark = pos;
+			if (!has(1)) {
+				inComment = state == BLOCK_COMMENT || state == BLOCK_STAR;
+				return;
+			}
+			char c = code[pos];
+			switch (state) {
+				case SPACE:
+					if (c == '/' && has(2) && (code[pos + 1] == '/' || code[pos + 1] == '*')) {
+						commentLine = line;
+						commentColumn = pos - lineStart + 1;
+						state = code[++pos] == '/' ? LINE_COMMENT : BLOCK_COMMENT;
+					} else if (c > ' ') {
+						return;
+					}
+					break;
+				case LINE_COMMENT:
+					if (c == '\n') state = SPACE;
+					break;
+				case BLOCK_COMMENT:
+					if (c == '*') state = BLOCK_STAR;
+					break;
+				case BLOCK_STAR:
+					state = c == '/' ? SPACE : c == '*' ? BLOCK_STAR : BLOCK_COMMENT;
+					break;
+			}
+			if (c == '\n') {
+				line++;
+				lineStart = pos + 1;
+			}
+			pos++;
 		}
 	}
-	
-	public String keyWord() {
-		return token;
+
+	private static boolean isIdentifierPart(char c) {
+		return c < 128 ? symbols[c] == null && c > ' ' && c != '"' : Character.isLetterOrDigit(c);
 	}
-	
-	public String symbol() {
-		return token;
+
+	int tokenCount() {
+		return tokens;
+	}
+
+	int line() {
+		return tokenLine;
+	}
+
+	int column() {
+		return tokenColumn;
+	}
+
+	public TokenKind tokenType() {
+		return type;
+	}
+
+	public Keyword keyWord() {
+		return keyword;
+	}
+
+	public char symbol() {
+		return symbol;
 	}
 
 	public String identifier() {
@@ -107,14 +322,22 @@ public class JackTokenizer {
 	}
 
 	public int intVal() {
-		return Integer.parseInt(token);
+		return intValue;
 	}
 
 	public String stringVal() {
-		return token.replaceAll("\"", "");
+		return token.substring(1, terminated ? token.length() - 1 : token.length());
+	}
+
+	boolean terminated() {
+		return terminated;
+	}
+
+	boolean inComment() {
+		return inComment;
 	}
 
-	public static void main(String[] args) throws FileNotFoundException {
+	public static void main(String[] args) throws IOException {
 		File dir = new File(args[0]);
 		File[] inputFiles;
 		if (dir.isDirectory()) {
@@ -124,27 +347,27 @@ public class JackTokenizer {
 		}
         for (File f: inputFiles) {
             if (!f.getName().endsWith(".jack")) continue;
-            JackTokenizer jt = new JackTokenizer(f.getPath());
-            PrintWriter pw = new PrintWriter(f.getPath().replace(".jack", "T.xml"));
-            pw.println("<tokens>");
-            while (jt.hasMoreTokens()) {
-                jt.advance();
-                if (jt.token == null) continue;
-                String tokenType = jt.tokenType();
-                pw.print("<" + tokenType + ">");
-                if (tokenType.equals("symbol")) {
-                    pw.print(jt.symbol());
-                } else if (tokenType.equals("stringConstant")){
-                    pw.print(jt.stringVal());
-                } else {
-                	pw.print(jt.token);
-				}
-                pw.print("</" + tokenType + ">");
-                pw.println();
+            try (JackTokenizer jt = new JackTokenizer(f.getPath());
+                    PrintWriter pw = new PrintWriter(f.getPath().replace(".jack", "T.xml"))) {
+                pw.println("<tokens>");
+                while (jt.hasMoreTokens()) {
+                    jt.advance();
+                    if (jt.token == null) continue;
+                    TokenKind tokenType = jt.tokenType();
+                    pw.print("<" + tokenType.tag + ">");
+                    if (tokenType == TokenKind.SYMBOL) {
+                        pw.print(jt.symbol());
+                    } else if (tokenType == TokenKind.STRING_CONSTANT){
+                        pw.print(jt.stringVal());
+                    } else {
+                        pw.print(jt.token);
+                    }
+                    pw.print("</" + tokenType.tag + ">");
+                    pw.println();
+                }
+                pw.println("</tokens>");
             }
-            pw.println("</tokens>");
-            pw.close();
             System.out.println(f.getPath() + ", Done!");
         }
 	}
-}
\ No newline at end of file
+}
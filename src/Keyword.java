@@ -0,0 +1,42 @@
+import java.util.*;
+
+enum Keyword {
+    CLASS("class"), CONSTRUCTOR("constructor"), FUNCTION("function"), METHOD("method"), FIELD("field"),
+    STATIC("static"), VAR("var"), INT("int"), CHAR("char"), BOOLEAN("boolean"), VOID("void"),
+    TRUE("true"), FALSE("false"), NULL("null"), THIS("this"), LET("let"), DO("do"), IF("if"), ELSE("else"),
+    WHILE("while"), RETURN("return");
+
+    private static final Keyword[][] byFirstChar = new Keyword[26][];
+
+    static {
+        for (char c = 'a'; c <= 'z'; c++) {
+            List<Keyword> list = new ArrayList<Keyword>();
+            for (Keyword k: values()) {
+                if (k.text.charAt(0) == c) list.add(k);
+            }
+            byFirstChar[c - 'a'] = list.toArray(new Keyword[0]);
+        }
+    }
+
+    final String text;
+
+    Keyword(String text) {
+        this.text = text;
+    }
+
+    static Keyword lookup(char[] code, int start, int length) {
+        char first = code[start];
+        if (first < 'a' || first > 'z') return null;
+        for (Keyword k: byFirstChar[first - 'a']) {
+            if (k.text.length() == length && matches(k.text, code, start)) return k;
+        }
+        return null;
+    }
+
+    private static boolean matches(String text, char[] code, int start) {
+        for (int i = 1; i < text.length(); i++) {
+            if (text.charAt(i) != code[start + i]) return false;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,5 @@
+enum Node {
+    CLASS, STATIC_VAR, FIELD_VAR, CONSTRUCTOR, FUNCTION, METHOD, PARAMETER, LOCAL_VAR, BLOCK,
+    LET, LET_ARRAY, IF, WHILE, DO, RETURN,
+    INT, STRING, TRUE, FALSE, NULL, THIS, VAR, ARRAY, CALL, UNARY, BINARY, DOUBLE
+}
@@ -0,0 +1,10 @@
+enum Op {
+    PUSH("push"), POP("pop"), ARITHMETIC("arithmetic"), LABEL("label"), GOTO("goto"), IF_GOTO("if-goto"),
+    CALL("call"), FUNCTION("function"), RETURN("return");
+
+    final String text;
+
+    Op(String text) {
+        this.text = text;
+    }
+}
@@ -0,0 +1,128 @@
+import java.util.*;
+
+class Options {
+    static final String USAGE = "usage: JackCompiler [-j N] [-i] [-O] [--pool-strings] [--whole-program] [--label-offsets] [--emit=text|binary] [--source-map] [-v] [--stats[=FILE]] [--max-errors N] <file.jack | directory | ->\n"
+            + "       JackCompiler --daemon [--socket PATH]";
+
+    private static final Map<String, String> VALUES = new HashMap<String, String>();
+
+    static {
+        VALUES.put("-j", "a thread count");
+        VALUES.put("--max-errors", "an error count");
+        VALUES.put("--socket", "a path");
+    }
+
+    String input;
+    int jobs = 1;
+    boolean incremental;
+    boolean optimize;
+    boolean poolStrings;
+    boolean wholeProgram;
+    boolean labelOffsets;
+    boolean binary;
+    boolean sourceMap;
+    boolean verbose;
+    boolean daemon;
+    boolean stats;
+    String statsFile;
+    String socket;
+    int maxErrors = 100;
+    ProgramIndex index;
+
+    static boolean takesValue(String option) {
+        return VALUES.containsKey(option);
+    }
+
+    static Options parse(String[] args) {
+        Options options = parseArgs(args);
+        if (options.input == null && !options.daemon) throw new IllegalArgumentException("no input given");
+        return options;
+    }
+
+    static Options flags(String... args) {
+        Options options = parseArgs(args);
+        if (options.input != null) throw new IllegalArgumentException("unexpected input " + options.input);
+        return options;
+    }
+
+    private static Options parseArgs(String[] args) {
+        Options options = new Options();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i], value = null;
+            if (takesValue(arg)) {
+                if (i + 1 == args.length) throw new IllegalArgumentException(arg + " needs " + VALUES.get(arg));
+                value = args[++i];
+            }
+            if (arg.equals("-j")) {
+                options.jobs = parseJobs(value);
+            } else if (arg.startsWith("-j") && arg.length() > 2) {
+                options.jobs = parseJobs(arg.substring(2));
+            } else if (arg.equals("-i") || arg.equals("--incremental")) {
+                options.incremental = true;
+            } else if (arg.equals("-O")) {
+                options.optimize = true;
+            } else if (arg.equals("--pool-strings")) {
+                options.poolStrings = true;
+            } else if (arg.equals("--whole-program")) {
+                options.wholeProgram = true;
+            } else if (arg.equals("--source-map")) {
+                options.sourceMap = true;
+            } else if (arg.equals("--emit=binary") || arg.equals("--emit=text")) {
+                options.binary = arg.equals("--emit=binary");
+            } else if (arg.equals("--label-offsets")) {
+                options.labelOffsets = true;
+            } else if (arg.equals("-v") || arg.equals("--verbose")) {
+                options.verbose = true;
+            } else if (arg.equals("--stats")) {
+                options.stats = true;
+            } else if (arg.startsWith("--stats=")) {
+                options.stats = true;
+                options.statsFile = arg.substring("--stats=".length());
+            } else if (arg.equals("--max-errors")) {
+                options.maxErrors = parseMaxErrors(value);
+            } else if (arg.startsWith("--max-errors=")) {
+                options.maxErrors = parseMaxErrors(arg.substring("--max-errors=".length()));
+            } else if (arg.equals("--daemon")) {
+                options.daemon = true;
+            } else if (arg.equals("--socket")) {
+                options.socket = value;
+            } else if (arg.startsWith("-") && arg.length() > 1) {
+                throw new IllegalArgumentException("unknown option " + arg);
+            } else {
+                if (options.input != null) throw new IllegalArgumentException("more than one input given");
+                options.input = arg;
+            }
+        }
+        return options;
+    }
+
+    String outputSuffix() {
+        return binary ? ".vmb" : ".vm";
+    }
+
+    String fingerprint() {
+        return JackCompiler.VERSION + (optimize ? " -O" : "") + (poolStrings ? " --pool-strings" : "")
+                + (wholeProgram ? " --whole-program" : "") + (labelOffsets ? " --label-offsets" : "")
+                + (binary ? " --emit=binary" : "") + (sourceMap ? " --source-map" : "");
+    }
+
+    private static int parseMaxErrors(String s) {
+        try {
+            int n = Integer.parseInt(s);
+            if (n > 0) return n;
+        } catch (NumberFormatException e) {
+        }
+        throw new IllegalArgumentException("bad error count " + s);
+    }
+
+    private static int parseJobs(String s) {
+        int n;
+        try {
+            n = Integer.parseInt(s);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("bad thread count " + s);
+        }
+        if (n < 0) throw new IllegalArgumentException("bad thread count " + s);
+        return n == 0 ? Runtime.getRuntime().availableProcessors() : n;
+    }
+}
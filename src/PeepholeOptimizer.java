@@ -0,0 +1,132 @@
+import java.util.*;
+
+class PeepholeOptimizer {
+
+    static void optimize(VMCode code) {
+        boolean changed;
+        do {
+            int before = code.size;
+            removeDeadLabels(code);
+            rewrite(code);
+            removeUnreachable(code);
+            changed = code.size != before;
+        } while (changed);
+    }
+
+    private static void removeDeadLabels(VMCode code) {
+        Set<String> targets = new HashSet<String>();
+        Map<String, String> aliases = new HashMap<String, String>();
+        int w = 0;
+        for (int start = 0; start < code.size; ) {
+            int end = code.functionEnd(start);
+            aliases.clear();
+            for (int i = start + 1; i < end; i++) {
+                if (code.ops[i] == Op.LABEL && code.ops[i - 1] == Op.LABEL) {
+                    String first = aliases.get(code.names[i - 1]);
+                    aliases.put(code.names[i], first != null ? first : code.names[i - 1]);
+                }
+            }
+            targets.clear();
+            for (int i = start; i < end; i++) {
+                if (code.ops[i] == Op.GOTO || code.ops[i] == Op.IF_GOTO) {
+                    String alias = aliases.get(code.names[i]);
+                    if (alias != null) code.names[i] = alias;
+                    targets.add(code.names[i]);
+                }
+            }
+            for (int i = start; i < end; i++) {
+                if (code.ops[i] == Op.LABEL && !targets.contains(code.names[i])) continue;
+                code.move(w++, i);
+            }
+            start = end;
+        }
+        code.truncate(w);
+    }
+
+    private static void removeUnreachable(VMCode code) {
+        int w = 0;
+        boolean reachable = true;
+        for (int i = 0; i < code.size; i++) {
+            Op op = code.ops[i];
+            if (op == Op.LABEL || op == Op.FUNCTION) reachable = true;
+            if (!reachable) continue;
+            code.move(w++, i);
+            if (op == Op.GOTO || op == Op.RETURN) reachable = false;
+        }
+        code.truncate(w);
+    }
+
+    private static void rewrite(VMCode code) {
+        int w = 0;
+        for (int i = 0; i < code.size; i++) {
+            code.move(w++, i);
+            w = reduce(code, w);
+        }
+        code.truncate(w);
+    }
+
+    private static int reduce(VMCode code, int w) {
+        while (true) {
+            int t = w - 1;
+            if (t >= 1 && (code.isArithmetic(t, Command.NOT) && code.isArithmetic(t - 1, Command.NOT)
+                    || code.isArithmetic(t, Command.NEG) && code.isArithmetic(t - 1, Command.NEG))) {
+                w -= 2;
+            } else if (t >= 1 && code.isArithmetic(t, Command.NEG) && isConstant(code, t - 1, 0)) {
+                w -= 1;
+            } else if (t >= 1 && code.ops[t] == Op.IF_GOTO && code.isPush(t - 1, Segment.CONSTANT)) {
+                if (code.args[t - 1] == 0) {
+                    w -= 2;
+                } else {
+                    code.set(t - 1, Op.GOTO, null, null, 0, code.names[t]);
+                    w -= 1;
+                }
+            } else if (t >= 2 && code.ops[t] == Op.IF_GOTO && code.isArithmetic(t - 1, Command.NOT)
+                    && isConstant(code, t - 2, 0)) {
+                code.set(t - 2, Op.GOTO, null, null, 0, code.names[t]);
+                w -= 2;
+            } else if (code.ops[t] == Op.LABEL && jumpsToLabelRun(code, t)) {
+                int g = t;
+                while (code.ops[g] == Op.LABEL) g--;
+                for (int i = g; i < t; i++) {
+                    code.move(i, i + 1);
+                }
+                w -= 1;
+            } else if (t >= 1 && code.ops[t] == Op.POP && code.ops[t - 1] == Op.PUSH
+                    && code.segments[t] == code.segments[t - 1] && code.args[t] == code.args[t - 1]) {
+                w -= 2;
+            } else if (t >= 4 && code.isPop(t, Segment.THAT) && code.args[t] == 0
+                    && isTemp0(code, t - 1, Op.PUSH) && code.isPop(t - 2, Segment.POINTER) && code.args[t - 2] == 1
+                    && isTemp0(code, t - 3, Op.POP) && code.ops[t - 4] == Op.PUSH && independentOfThat(code, t - 4)) {
+                code.move(t - 3, t - 4);
+                code.set(t - 4, Op.POP, Segment.POINTER, null, 1, null);
+                code.set(t - 2, Op.POP, Segment.THAT, null, 0, null);
+                w -= 2;
+            } else {
+                return w;
+            }
+        }
+    }
+
+    private static boolean jumpsToLabelRun(VMCode code, int t) {
+        int g = t;
+        while (g > 0 && code.ops[g] == Op.LABEL) g--;
+        if (code.ops[g] != Op.GOTO) return false;
+        for (int i = g + 1; i <= t; i++) {
+            if (code.names[i].equals(code.names[g])) return true;
+        }
+        return false;
+    }
+
+    private static boolean isConstant(VMCode code, int i, int value) {
+        return code.isPush(i, Segment.CONSTANT) && code.args[i] == value;
+    }
+
+    private static boolean isTemp0(VMCode code, int i, Op op) {
+        return code.ops[i] == op && code.segments[i] == Segment.TEMP && code.args[i] == 0;
+    }
+
+    private static boolean independentOfThat(VMCode code, int i) {
+        Segment s = code.segments[i];
+        return s != Segment.THAT && !(s == Segment.POINTER && code.args[i] == 1) && !(s == Segment.TEMP && code.args[i] == 0);
+    }
+}
@@ -0,0 +1,233 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+final class ProgramIndex {
+    static final String FILE = ".jackc-index";
+    static final int UNKNOWN = -1;
+    private static final String HEADER = "jackc-index 1";
+    private static final String[] BUILTINS = {
+        "Math function:init:0 function:abs:1 function:multiply:2 function:divide:2 function:min:2 function:max:2 function:sqrt:1",
+        "String constructor:new:1 method:dispose:0 method:length:0 method:charAt:1 method:setCharAt:2 method:appendChar:1"
+                + " method:eraseLastChar:0 method:intValue:0 method:setInt:1 function:backSpace:0 function:doubleQuote:0 function:newLine:0",
+        "Array function:new:1 method:dispose:0",
+        "Output function:init:0 function:moveCursor:2 function:printChar:1 function:printString:1 function:printInt:1"
+                + " function:println:0 function:backSpace:0",
+        "Screen function:init:0 function:clearScreen:0 function:setColor:1 function:drawPixel:2 function:drawLine:4"
+                + " function:drawRectangle:4 function:drawCircle:3",
+        "Keyboard function:init:0 function:keyPressed:0 function:readChar:0 function:readLine:1 function:readInt:1",
+        "Memory function:init:0 function:peek:1 function:poke:2 function:alloc:1 function:deAlloc:1",
+        "Sys function:init:0 function:halt:0 function:error:1 function:wait:1"
+    };
+
+    private final Set<String> classes, opaque;
+    private final Map<String, Integer> subroutines;
+    final Set<String> changed = new HashSet<String>();
+    final int scanned, cached;
+
+    private ProgramIndex(Set<String> classes, Set<String> opaque, Map<String, Integer> subroutines, int scanned, int cached) {
+        this.classes = Collections.unmodifiableSet(classes);
+        this.opaque = Collections.unmodifiableSet(opaque);
+        this.subroutines = Collections.unmodifiableMap(subroutines);
+        this.scanned = scanned;
+        this.cached = cached;
+    }
+
+    static ProgramIndex build(File dir, boolean persist) {
+        Map<String, String> cache = persist ? load(new File(dir, FILE)) : new HashMap<String, String>();
+        Map<String, String> entries = new TreeMap<String, String>();
+        Set<String> opaque = new HashSet<String>();
+        int scanned = 0;
+        File[] files = dir.listFiles();
+        if (files == null) files = new File[0];
+        for (File f: files) {
+            String name = f.getName();
+            if (name.endsWith(".vm") && !new File(dir, className(name) + ".jack").isFile()) opaque.add(className(name));
+            if (!name.endsWith(".jack")) continue;
+            String stamp = f.lastModified() + " " + f.length();
+            String entry = cache.get(name);
+            if (entry == null || !entry.startsWith(stamp + " ")) {
+                try (JackTokenizer jt = new JackTokenizer(f.getPath())) {
+                    entry = stamp + " " + scan(jt, className(name));
+                } catch (IOException | UncheckedIOException e) {
+                    entry = stamp + " ? " + className(name);
+                }
+                scanned++;
+            }
+            entries.put(name, entry);
+        }
+        if (persist && (scanned > 0 || !entries.keySet().equals(cache.keySet()))) save(new File(dir, FILE), entries);
+        List<String> declarations = new ArrayList<String>();
+        for (String entry: entries.values()) declarations.add(entry.split(" ", 3)[2]);
+        ProgramIndex index = index(declarations, opaque, scanned, entries.size() - scanned);
+        if (persist) {
+            Map<String, String> before = declarations(cache.values()), after = declarations(entries.values());
+            Set<String> names = new HashSet<String>(before.keySet());
+            names.addAll(after.keySet());
+            for (String name: names) {
+                if (!Objects.equals(before.get(name), after.get(name))) index.changed.add(name);
+            }
+        }
+        return index;
+    }
+
+    private static Map<String, String> declarations(Collection<String> entries) {
+        Map<String, String> declarations = new HashMap<String, String>();
+        for (String entry: entries) {
+            String declaration = entry.split(" ", 3)[2];
+            String[] fields = declaration.split(" ", 3);
+            String name = fields[0].equals("?") ? (fields.length > 1 ? fields[1] : "?") : fields[0];
+            declarations.put(name, declarations.containsKey(name) ? "" : declaration);
+        }
+        return declarations;
+    }
+
+    static boolean references(File source, Set<String> classes) {
+        try (JackTokenizer jt = new JackTokenizer(source.getPath())) {
+            for (jt.advance(); jt.token != null; jt.advance()) {
+                if (jt.tokenType() == TokenKind.IDENTIFIER && classes.contains(jt.identifier())) return true;
+            }
+            return false;
+        } catch (IOException | RuntimeException e) {
+            return true;
+        }
+    }
+
+    static ProgramIndex of(List<? extends CharSequence> sources) {
+        List<String> declarations = new ArrayList<String>();
+        for (CharSequence source: sources) declarations.add(scan(new JackTokenizer(source), null));
+        return index(declarations, new HashSet<String>(), sources.size(), 0);
+    }
+
+    private static ProgramIndex index(List<String> declarations, Set<String> opaque, int scanned, int cached) {
+        Set<String> classes = new HashSet<String>();
+        Map<String, Integer> subroutines = new HashMap<String, Integer>();
+        Set<String> declared = new HashSet<String>();
+        for (String d: declarations) declared.add(d.split(" ", 2)[0]);
+        for (String builtin: BUILTINS) {
+            if (!declared.contains(builtin.split(" ", 2)[0])) declarations.add(builtin);
+        }
+        for (String d: declarations) {
+            String[] fields = d.split(" ");
+            if (fields[0].equals("?")) {
+                if (fields.length > 1) opaque.add(fields[1]);
+                continue;
+            }
+            classes.add(fields[0]);
+            for (int i = 1; i < fields.length; i++) {
+                String[] sub = fields[i].split(":");
+                subroutines.put(fields[0] + "." + sub[1], kind(sub[0]).ordinal() << 16 | Integer.parseInt(sub[2]));
+            }
+        }
+        return new ProgramIndex(classes, opaque, subroutines, scanned, cached);
+    }
+
+    static String scan(JackTokenizer jt, String fallback) {
+        StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        try {
+            jt.advance();
+            while (jt.token != null) {
+                if (jt.tokenType() == TokenKind.SYMBOL && jt.symbol() == '{') {
+                    depth++;
+                } else if (jt.tokenType() == TokenKind.SYMBOL && jt.symbol() == '}') {
+                    depth--;
+                } else if (depth == 0 && jt.keyWord() == Keyword.CLASS) {
+                    jt.advance();
+                    sb.append(jt.identifier());
+                } else if (depth == 1 && isSubroutine(jt.keyWord())) {
+                    String kind = jt.token;
+                    jt.advance();
+                    jt.advance();
+                    String name = jt.identifier();
+                    jt.advance();
+                    int params = 0;
+                    for (jt.advance(); jt.token != null && jt.symbol() != ')'; jt.advance()) {
+                        if (params == 0 || jt.symbol() == ',') params++;
+                    }
+                    sb.append(' ').append(kind).append(':').append(name).append(':').append(params);
+                }
+                jt.advance();
+            }
+        } catch (RuntimeException e) {
+            sb.setLength(0);
+        }
+        return sb.length() == 0 ? (fallback == null ? "?" : "? " + fallback) : sb.toString();
+    }
+
+    private static boolean isSubroutine(Keyword k) {
+        return k == Keyword.CONSTRUCTOR || k == Keyword.FUNCTION || k == Keyword.METHOD;
+    }
+
+    private static Node kind(String keyword) {
+        if (keyword.equals(Keyword.CONSTRUCTOR.text)) return Node.CONSTRUCTOR;
+        if (keyword.equals(Keyword.FUNCTION.text)) return Node.FUNCTION;
+        if (keyword.equals(Keyword.METHOD.text)) return Node.METHOD;
+        throw new IllegalArgumentException("bad subroutine kind " + keyword);
+    }
+
+    private static String className(String fileName) {
+        return fileName.substring(0, fileName.lastIndexOf('.'));
+    }
+
+    boolean knows(String className) {
+        return classes.contains(className);
+    }
+
+    boolean isOpaque(String className) {
+        return opaque.contains(className);
+    }
+
+    int lookup(String subroutine) {
+        Integer s = subroutines.get(subroutine);
+        return s == null ? UNKNOWN : s;
+    }
+
+    int classCount() {
+        return classes.size();
+    }
+
+    int subroutineCount() {
+        return subroutines.size();
+    }
+
+    static Node kindOf(int signature) {
+        return Node.values()[signature >>> 16];
+    }
+
+    static int parameters(int signature) {
+        return signature & 0xffff;
+    }
+
+    private static Map<String, String> load(File file) {
+        Map<String, String> entries = new HashMap<String, String>();
+        if (!file.isFile()) return entries;
+        try (BufferedReader r = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            if (!HEADER.equals(r.readLine())) return entries;
+            String line;
+            while ((line = r.readLine()) != null) {
+                String[] f = line.split(" ", 2);
+                if (f.length == 2 && f[1].split(" ", 3).length == 3) entries.put(f[0], f[1]);
+            }
+        } catch (IOException e) {
+            entries.clear();
+        }
+        return entries;
+    }
+
+    private static void save(File file, Map<String, String> entries) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(file.getParentFile().toPath(), FILE, ".tmp");
+            try (Writer w = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                w.write(HEADER + "\n");
+                for (Map.Entry<String, String> e: entries.entrySet()) w.write(e.getKey() + " " + e.getValue() + "\n");
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+        } finally {
+            if (tmp != null) tmp.toFile().delete();
+        }
+    }
+}
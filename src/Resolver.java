@@ -0,0 +1,138 @@
+import java.util.*;
+
+class Resolver {
+    private static final int THIS = SymbolTable.handle(Segment.POINTER, 0);
+
+    private final Ast ast;
+    private final SymbolTable st;
+    private final String className;
+    private final ProgramIndex index;
+    private final List<Diagnostic> diagnostics;
+    private final Map<String, Integer> subroutines = new HashMap<String, Integer>();
+    private int subroutine;
+
+    private Resolver(Ast ast, int root, ProgramIndex index, List<Diagnostic> diagnostics) {
+        this.ast = ast;
+        this.index = index;
+        this.diagnostics = diagnostics;
+        st = new SymbolTable();
+        className = ast.names[root];
+        for (int n = ast.first[root]; n != Ast.NONE; n = ast.next[n]) {
+            Node kind = ast.kinds[n];
+            if (kind != Node.CONSTRUCTOR && kind != Node.FUNCTION && kind != Node.METHOD) continue;
+            int params = 0;
+            for (int c = ast.first[n]; c != Ast.NONE; c = ast.next[c]) {
+                if (ast.kinds[c] == Node.PARAMETER) params++;
+            }
+            subroutines.put(ast.names[n], kind.ordinal() << 16 | params);
+        }
+    }
+
+    static int resolve(Ast ast, int root, ProgramIndex index, List<Diagnostic> diagnostics) {
+        Resolver r = new Resolver(ast, root, index, diagnostics);
+        for (int n = ast.first[root]; n != Ast.NONE; n = ast.next[n]) {
+            switch (ast.kinds[n]) {
+                case STATIC_VAR:
+                    r.define(n, Segment.STATIC);
+                    break;
+                case FIELD_VAR:
+                    r.define(n, Segment.THIS);
+                    break;
+                default:
+                    r.resolveSubroutine(n);
+            }
+        }
+        return r.st.lookups();
+    }
+
+    private void define(int n, Segment kind) {
+        st.define(ast.names[n], ast.types[n], kind);
+    }
+
+    private void resolveSubroutine(int sub) {
+        st.startSubroutin();
+        subroutine = sub;
+        if (ast.kinds[sub] == Node.METHOD) {
+            st.define("this", className, Segment.ARGUMENT);
+        }
+        for (int n = ast.first[sub]; n != Ast.NONE; n = ast.next[n]) {
+            switch (ast.kinds[n]) {
+                case PARAMETER:
+                    define(n, Segment.ARGUMENT);
+                    break;
+                case LOCAL_VAR:
+                    define(n, Segment.LOCAL);
+                    break;
+                default:
+                    resolveNode(n);
+            }
+        }
+    }
+
+    private void resolveNode(int n) {
+        switch (ast.kinds[n]) {
+            case LET:
+            case LET_ARRAY:
+            case VAR:
+            case ARRAY:
+                ast.ref[n] = st.handleOf(ast.names[n]);
+                if (ast.ref[n] == Ast.NONE) report(n, "unknown variable " + ast.names[n]);
+                break;
+            case CALL:
+                String receiver = ast.types[n];
+                if (receiver == null) {
+                    ast.types[n] = className;
+                } else {
+                    ast.ref[n] = st.handleOf(receiver);
+                    if (ast.ref[n] != Ast.NONE) ast.types[n] = st.typeOf(ast.ref[n]);
+                }
+                Integer own = ast.types[n].equals(className) ? subroutines.get(ast.names[n]) : null;
+                if (receiver == null) ast.ref[n] = own != null && ProgramIndex.kindOf(own) != Node.METHOD ? Ast.NONE : THIS;
+                ast.names[n] = ast.types[n] + "." + ast.names[n];
+                if (index != null) checkCall(n, receiver, own);
+                break;
+        }
+        for (int c = ast.first[n]; c != Ast.NONE; c = ast.next[c]) {
+            resolveNode(c);
+        }
+    }
+
+    private void checkCall(int n, String receiver, Integer own) {
+        String target = ast.types[n];
+        int signature;
+        if (own != null) {
+            signature = own;
+        } else if (target.equals(className)) {
+            report(n, "unknown subroutine " + ast.names[n]);
+            return;
+        } else {
+            if (index.isOpaque(target)) return;
+            if (!index.knows(target)) {
+                report(n, ast.ref[n] == Ast.NONE ? "unknown class or variable " + target
+                        : "unknown class " + target + " of " + receiver);
+                return;
+            }
+            signature = index.lookup(ast.names[n]);
+            if (signature == ProgramIndex.UNKNOWN) {
+                report(n, "unknown subroutine " + ast.names[n]);
+                return;
+            }
+        }
+        boolean method = ProgramIndex.kindOf(signature) == Node.METHOD;
+        if (method && (ast.ref[n] == Ast.NONE || receiver == null && ast.kinds[subroutine] == Node.FUNCTION)) {
+            report(n, "method " + ast.names[n] + " called without an object");
+        } else if (!method && ast.ref[n] != Ast.NONE) {
+            report(n, "function " + ast.names[n] + " called on " + receiver);
+        }
+        int args = 0;
+        for (int c = ast.first[n]; c != Ast.NONE; c = ast.next[c]) args++;
+        int params = ProgramIndex.parameters(signature);
+        if (args != params) {
+            report(n, ast.names[n] + " expects " + params + (params == 1 ? " argument" : " arguments") + ", got " + args);
+        }
+    }
+
+    private void report(int n, String message) {
+        diagnostics.add(new Diagnostic(Ast.line(ast.pos[n]), Ast.column(ast.pos[n]), message));
+    }
+}
@@ -0,0 +1,15 @@
+import java.nio.charset.StandardCharsets;
+
+enum Segment {
+    CONSTANT("constant"), ARGUMENT("argument"), LOCAL("local"), STATIC("static"),
+    THIS("this"), THAT("that"), POINTER("pointer"), TEMP("temp");
+
+    final String text;
+    final byte[] push, pop;
+
+    Segment(String text) {
+        this.text = text;
+        push = ("push " + text + " ").getBytes(StandardCharsets.US_ASCII);
+        pop = ("pop " + text + " ").getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,129 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+
+public class SourceMap {
+    private static final String BASE64 = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    static String encode(VMCode code, String file, String source) {
+        StringBuilder mappings = new StringBuilder(code.size);
+        List<String> names = new ArrayList<String>();
+        int index = 0, line = 0, column = 0, name = 0, previous = -1;
+        for (int i = 0; i < code.size; i++) {
+            int position = code.positions[i];
+            boolean function = code.ops[i] == Op.FUNCTION;
+            if (position == previous && !function) continue;
+            if (mappings.length() > 0) mappings.append(',');
+            vlq(mappings, i - index);
+            index = i;
+            previous = position;
+            if (position == 0) continue;
+            int l = Ast.line(position), c = Ast.column(position);
+            vlq(mappings, l - line);
+            vlq(mappings, c - column);
+            line = l;
+            column = c;
+            if (function) {
+                vlq(mappings, names.size() - name);
+                name = names.size();
+                names.add(code.names[i]);
+            }
+        }
+        StringBuilder sb = new StringBuilder(mappings.length() + 96 + 16 * names.size());
+        sb.append("{\"version\":1,\"file\":\"").append(CompileStats.escape(file));
+        sb.append("\",\"source\":\"").append(CompileStats.escape(source));
+        sb.append("\",\"instructions\":").append(code.size).append(",\"names\":[");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) sb.append(',');
+            sb.append('"').append(CompileStats.escape(names.get(i))).append('"');
+        }
+        return sb.append("],\"mappings\":\"").append(mappings).append("\"}\n").toString();
+    }
+
+    static void write(VMCode code, File output, File source) {
+        String map = encode(code, output.getName(), source.getName());
+        try {
+            Files.write(Paths.get(output.getPath() + ".map"), map.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void vlq(StringBuilder sb, int value) {
+        int v = value < 0 ? (-value << 1) | 1 : value << 1;
+        do {
+            int digit = v & 31;
+            v >>>= 5;
+            sb.append(BASE64.charAt(v != 0 ? digit | 32 : digit));
+        } while (v != 0);
+    }
+
+    static int[][] decode(String mappings, int instructions) {
+        int[][] map = new int[instructions][];
+        int[] state = new int[4], fields = new int[4];
+        int[] current = null;
+        int next = 0, last = -1;
+        for (int j = 0; j <= mappings.length(); ) {
+            int field = 0, shift = 0, v = 0;
+            for (; j < mappings.length() && mappings.charAt(j) != ','; j++) {
+                int digit = BASE64.indexOf(mappings.charAt(j));
+                if (digit < 0 || field == 4) throw new IllegalArgumentException("bad mapping at " + j);
+                v |= (digit & 31) << shift;
+                shift += 5;
+                if ((digit & 32) == 0) {
+                    fields[field++] = (v & 1) != 0 ? -(v >>> 1) : v >>> 1;
+                    v = shift = 0;
+                }
+            }
+            j++;
+            if (field == 0) continue;
+            int index = state[0] += fields[0];
+            if (index <= last || index >= instructions) throw new IllegalArgumentException("bad instruction index " + index);
+            last = index;
+            for (; next < index; next++) map[next] = current;
+            if (field == 1) {
+                current = null;
+                continue;
+            }
+            state[1] += fields[1];
+            state[2] += fields[2];
+            if (field == 4) state[3] += fields[3];
+            current = new int[] {state[1], state[2], field == 4 ? state[3] : -1};
+        }
+        for (; next < instructions; next++) map[next] = current;
+        return map;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 1) {
+            System.err.println("usage: SourceMap <file.vm.map>");
+            System.exit(2);
+        }
+        String json = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+        String source = field(json, "\"source\":\"", "\"");
+        String names = field(json, "\"names\":[", "]");
+        String[] subroutines = names.isEmpty() ? new String[0] : names.substring(1, names.length() - 1).split("\",\"");
+        int[][] map;
+        try {
+            map = decode(field(json, "\"mappings\":\"", "\""), Integer.parseInt(field(json, "\"instructions\":", ",")));
+        } catch (IllegalArgumentException e) {
+            System.err.println(args[0] + ": " + e.getMessage());
+            System.exit(1);
+            return;
+        }
+        String subroutine = "-";
+        for (int i = 0; i < map.length; i++) {
+            int[] m = map[i];
+            if (m != null && m[2] >= 0 && (i == 0 || map[i - 1] != m)) subroutine = subroutines[m[2]];
+            System.out.println(i + "\t" + (m == null ? "-" : source + ":" + m[0] + ":" + m[1]) + "\t" + subroutine);
+        }
+    }
+
+    private static String field(String json, String prefix, String end) {
+        int start = json.indexOf(prefix);
+        if (start < 0) return "";
+        start += prefix.length();
+        return json.substring(start, json.indexOf(end, start));
+    }
+}
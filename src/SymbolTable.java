@@ -1,95 +1,103 @@
-import java.util.*;
+import java.util.Arrays;
 
 public class SymbolTable {
+    private static final Segment[] SEGMENTS = Segment.values();
 
-    Map<String, Table> classLevel, subroutineLevel;
-    private int fieldCount, staticCount;
-    private int argCount, nVar;
-
-    public SymbolTable() {
-        classLevel = new HashMap<String, Table>();
-        fieldCount = staticCount = 0;
-        startSubroutin();
-    }
+    private final Scope classLevel = new Scope(), subroutineLevel = new Scope();
+    private final int[] counts = new int[SEGMENTS.length];
+    private final String[][] types = new String[SEGMENTS.length][8];
+    private int lookups;
 
     void startSubroutin() {
-        subroutineLevel = new HashMap<String, Table>();
-        argCount = nVar = 0;
+        subroutineLevel.clear();
+        counts[Segment.ARGUMENT.ordinal()] = counts[Segment.LOCAL.ordinal()] = 0;
     }
 
-    void define(String name, String type, String kind) {
-        if (kind.equals("field") || kind.equals("static")) {
-            if (!classLevel.containsKey(name))
-                classLevel.put(name, new Table(name, type, kind, varCount(kind)));
-        } else {
-            if (!subroutineLevel.containsKey(name))
-                subroutineLevel.put(name, new Table(name, type, kind, varCount(kind)));
+    void define(String name, String type, Segment kind) {
+        Scope scope = kind == Segment.STATIC || kind == Segment.THIS ? classLevel : subroutineLevel;
+        if (scope.get(name) != -1) return;
+        int index = counts[kind.ordinal()]++;
+        String[] kindTypes = types[kind.ordinal()];
+        if (index == kindTypes.length) {
+            kindTypes = types[kind.ordinal()] = Arrays.copyOf(kindTypes, index * 2);
         }
+        kindTypes[index] = type;
+        scope.put(name, handle(kind, index));
     }
 
-    private int varCount(String kind) {
-        if (kind.equals("field")) {
-            fieldCount++;
-            return fieldCount - 1;
-        } else if (kind.equals("static")) {
-            staticCount++;
-            return staticCount - 1;
-        } else if (kind.equals("argument")) {
-            argCount++;
-            return argCount - 1;
-        } else {
-            nVar++;
-            return nVar - 1;
-        }
+    int handleOf(String name) {
+        lookups++;
+        int handle = subroutineLevel.get(name);
+        return handle != -1 ? handle : classLevel.get(name);
     }
 
-    String kindOf(String name) {
-        if (subroutineLevel.containsKey(name))
-            return subroutineLevel.get(name).kind;
-        else if (classLevel.containsKey(name))
-            return classLevel.get(name).kind;
-        else
-            return null;
+    int lookups() {
+        return lookups;
     }
 
-    String typeOf(String name) {
-        if (subroutineLevel.containsKey(name))
-            return subroutineLevel.get(name).type;
-        else if (classLevel.containsKey(name))
-            return classLevel.get(name).type;
-        else
-            return null;
+    String typeOf(int handle) {
+        return types[handle >>> 16][handle & 0xffff];
     }
 
-    int indexOf(String name) {
-        if (subroutineLevel.containsKey(name))
-            return subroutineLevel.get(name).index;
-        else if (classLevel.containsKey(name))
-            return classLevel.get(name).index;
-        else
-            return -1;
+    static int handle(Segment segment, int index) {
+        return segment.ordinal() << 16 | index;
     }
 
-    String getTable(String name) {
-        if (classLevel.containsKey(name))
-            return classLevel.get(name).toString();
-        else
-            return subroutineLevel.get(name).toString();
+    static Segment segment(int handle) {
+        return SEGMENTS[handle >>> 16];
     }
-}
 
-class Table {
-    String name, type, kind;
-    int index;
-
-    Table(String name, String type, String kind, int index) {
-        this.name = name;
-        this.type = type;
-        this.kind = kind;
-        this.index = index;
+    static int index(int handle) {
+        return handle & 0xffff;
     }
 
-    public String toString() {
-        return String.format("name: %s, type: %s, kind: %s, index: %d", name, type, kind, index);
+    private static final class Scope {
+        private String[] names = new String[16];
+        private int[] handles = new int[16];
+        private int[] stamps = new int[16];
+        private int generation = 1, size;
+
+        int get(String name) {
+            int mask = names.length - 1;
+            for (int i = hash(name) & mask; stamps[i] == generation; i = (i + 1) & mask) {
+                if (names[i].equals(name)) return handles[i];
+            }
+            return -1;
+        }
+
+        void put(String name, int handle) {
+            if (2 * (size + 1) > names.length) grow();
+            int mask = names.length - 1;
+            int i = hash(name) & mask;
+            while (stamps[i] == generation) i = (i + 1) & mask;
+            names[i] = name;
+            handles[i] = handle;
+            stamps[i] = generation;
+            size++;
+        }
+
+        void clear() {
+            generation++;
+            size = 0;
+        }
+
+        private void grow() {
+            String[] oldNames = names;
+            int[] oldHandles = handles, oldStamps = stamps;
+            int oldGeneration = generation;
+            names = new String[oldNames.length * 2];
+            handles = new int[names.length];
+            stamps = new int[names.length];
+            generation = 1;
+            size = 0;
+            for (int i = 0; i < oldNames.length; i++) {
+                if (oldStamps[i] == oldGeneration) put(oldNames[i], oldHandles[i]);
+            }
+        }
+
+        private static int hash(String name) {
+            int h = name.hashCode();
+            return h ^ (h >>> 16);
+        }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,13 @@
+enum TokenKind {
+    KEYWORD("keyword"),
+    SYMBOL("symbol"),
+    INTEGER_CONSTANT("integerConstant"),
+    STRING_CONSTANT("stringConstant"),
+    IDENTIFIER("identifier");
+
+    final String tag;
+
+    TokenKind(String tag) {
+        this.tag = tag;
+    }
+}
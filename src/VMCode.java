@@ -0,0 +1,200 @@
+import java.util.*;
+
+class VMCode {
+    Op[] ops;
+    Segment[] segments;
+    Command[] commands;
+    int[] args;
+    String[] names;
+    int[] positions;
+    int size, position;
+
+    VMCode() {
+        this(256);
+    }
+
+    VMCode(int capacity) {
+        capacity = Math.max(capacity, 16);
+        ops = new Op[capacity];
+        segments = new Segment[capacity];
+        commands = new Command[capacity];
+        args = new int[capacity];
+        names = new String[capacity];
+        positions = new int[capacity];
+        size = 0;
+    }
+
+    void writePush(Segment segment, int index) {
+        add(Op.PUSH, segment, null, index, null);
+    }
+
+    void writePop(Segment segment, int index) {
+        add(Op.POP, segment, null, index, null);
+    }
+
+    void writeArithmetic(Command command) {
+        add(Op.ARITHMETIC, null, command, 0, null);
+    }
+
+    void writeArithmetic(char operator) {
+        switch (operator) {
+            case '+': writeArithmetic(Command.ADD); break;
+            case '-': writeArithmetic(Command.SUB); break;
+            case '=': writeArithmetic(Command.EQ); break;
+            case '>': writeArithmetic(Command.GT); break;
+            case '<': writeArithmetic(Command.LT); break;
+            case '&': writeArithmetic(Command.AND); break;
+            case '|': writeArithmetic(Command.OR); break;
+            case '~': writeArithmetic(Command.NOT); break;
+            case '*': writeCall("Math.multiply", 2); break;
+            case '/': writeCall("Math.divide", 2); break;
+            default: throw new IllegalArgumentException("unknown operator " + operator);
+        }
+    }
+
+    void writeLabel(String label) {
+        add(Op.LABEL, null, null, 0, label);
+    }
+
+    void writeGoto(String label) {
+        add(Op.GOTO, null, null, 0, label);
+    }
+
+    void writeIf(String label) {
+        add(Op.IF_GOTO, null, null, 0, label);
+    }
+
+    void writeCall(String name, int nArgs) {
+        add(Op.CALL, null, null, nArgs, name);
+    }
+
+    void writeFunction(String name, int nLocals) {
+        add(Op.FUNCTION, null, null, nLocals, name);
+    }
+
+    void writeReturn() {
+        add(Op.RETURN, null, null, 0, null);
+    }
+
+    boolean isPush(int i, Segment segment) {
+        return ops[i] == Op.PUSH && segments[i] == segment;
+    }
+
+    boolean isPop(int i, Segment segment) {
+        return ops[i] == Op.POP && segments[i] == segment;
+    }
+
+    boolean isArithmetic(int i, Command command) {
+        return ops[i] == Op.ARITHMETIC && commands[i] == command;
+    }
+
+    void move(int to, int from) {
+        ops[to] = ops[from];
+        segments[to] = segments[from];
+        commands[to] = commands[from];
+        args[to] = args[from];
+        names[to] = names[from];
+        positions[to] = positions[from];
+    }
+
+    void set(int i, Op op, Segment segment, Command command, int arg, String name) {
+        ops[i] = op;
+        segments[i] = segment;
+        commands[i] = command;
+        args[i] = arg;
+        names[i] = name;
+    }
+
+    void truncate(int newSize) {
+        for (int i = newSize; i < size; i++) {
+            names[i] = null;
+        }
+        size = newSize;
+    }
+
+    List<String> removeFunctions(Set<String> keep) {
+        List<String> removed = new ArrayList<String>();
+        int w = 0;
+        boolean keeping = true;
+        for (int i = 0; i < size; i++) {
+            if (ops[i] == Op.FUNCTION) {
+                keeping = keep.contains(names[i]);
+                if (!keeping) removed.add(names[i]);
+            }
+            if (keeping) move(w++, i);
+        }
+        truncate(w);
+        return removed;
+    }
+
+    int functionEnd(int start) {
+        int end = start + 1;
+        while (end < size && ops[end] != Op.FUNCTION) end++;
+        return end;
+    }
+
+    void numberLabels() {
+        Map<String, String> offsets = new HashMap<String, String>();
+        for (int start = 0; start < size; ) {
+            int end = functionEnd(start);
+            offsets.clear();
+            for (int i = start; i < end; i++) {
+                if (ops[i] == Op.LABEL) offsets.put(names[i], "L" + (i - start));
+            }
+            for (int i = start; i < end; i++) {
+                if (ops[i] == Op.LABEL || ops[i] == Op.GOTO || ops[i] == Op.IF_GOTO) {
+                    String offset = offsets.get(names[i]);
+                    if (offset != null) names[i] = offset;
+                }
+            }
+            start = end;
+        }
+    }
+
+    void writeTo(VMWriter w) {
+        for (int i = 0; i < size; i++) {
+            switch (ops[i]) {
+                case PUSH: w.writePush(segments[i], args[i]); break;
+                case POP: w.writePop(segments[i], args[i]); break;
+                case ARITHMETIC: w.writeArithmetic(commands[i]); break;
+                case LABEL: w.writeLabel(names[i]); break;
+                case GOTO: w.writeGoto(names[i]); break;
+                case IF_GOTO: w.writeIf(names[i]); break;
+                case CALL: w.writeCall(names[i], args[i]); break;
+                case FUNCTION: w.writeFunction(names[i], args[i]); break;
+                case RETURN: w.writeReturn(); break;
+            }
+        }
+    }
+
+    void append(VMCode from, int i) {
+        add(from.ops[i], from.segments[i], from.commands[i], from.args[i], from.names[i]);
+        positions[size - 1] = from.positions[i];
+    }
+
+    void replace(VMCode other) {
+        ops = other.ops;
+        segments = other.segments;
+        commands = other.commands;
+        args = other.args;
+        names = other.names;
+        positions = other.positions;
+        size = other.size;
+    }
+
+    void add(Op op, Segment segment, Command command, int arg, String name) {
+        if (size == ops.length) grow();
+        positions[size] = position;
+        set(size++, op, segment, command, arg, name);
+    }
+
+    private void grow() {
+        int n = ops.length * 2;
+        ops = Arrays.copyOf(ops, n);
+        segments = Arrays.copyOf(segments, n);
+        commands = Arrays.copyOf(commands, n);
+        args = Arrays.copyOf(args, n);
+        names = Arrays.copyOf(names, n);
+        positions = Arrays.copyOf(positions, n);
+    }
+}
@@ -1,93 +1,167 @@
 import java.io.*;
-import java.util.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
 
 public class VMWriter {
-    PrintWriter pw;
-    Map<String, String> arithmeticMap;
+    private static final ThreadLocal<byte[]> buffers = new ThreadLocal<byte[]>();
+    private static final byte[] LABEL = bytes("label "), GOTO = bytes("goto "), IF_GOTO = bytes("if-goto "),
+            CALL = bytes("call "), FUNCTION = bytes("function "), RETURN = bytes("return\n");
+
+    private final String fileName;
+    private final WritableByteChannel out;
+    private byte[] buf;
+    private int size;
 
     public VMWriter(String fileName) {
-        try {
-            pw = new PrintWriter(fileName);
-            initArithmeticMap();
-        } catch (FileNotFoundException e) {
-            e.printStackTrace();
-        }
+        this(fileName, null);
     }
 
-    void println() {
-        pw.println();
+    public VMWriter(WritableByteChannel out) {
+        this(null, out);
     }
 
-    void println(String s) {
-        pw.println(s);
+    private VMWriter(String fileName, WritableByteChannel out) {
+        this.fileName = fileName;
+        this.out = out;
+        buf = buffers.get();
+        if (buf == null) {
+            buf = new byte[1 << 16];
+        } else {
+            buffers.remove();
+        }
+        size = 0;
     }
 
-    void print(String s) {
-        pw.print(s);
+    private static byte[] bytes(String s) {
+        return s.getBytes(StandardCharsets.US_ASCII);
     }
 
-    void initArithmeticMap() {
-        arithmeticMap = new HashMap<String, String>();
-        arithmeticMap.put("+", "add");
-        arithmeticMap.put("-", "sub");
-        arithmeticMap.put("neg", "neg");
-        arithmeticMap.put("=", "eq");
-        arithmeticMap.put(">", "gt");
-        arithmeticMap.put("<", "lt");
-        arithmeticMap.put("&", "and");
-        arithmeticMap.put("|", "or");
-        arithmeticMap.put("~", "not");
-        arithmeticMap.put("*", "call Math.multiply 2");
-        arithmeticMap.put("/", "call Math.divide 2");
+    void writePush(Segment segment, int index) {
+        put(segment.push);
+        putLine(index);
     }
 
-    void writePush(String segment, int index) {
-        if (segment.equals("field")) {
-            pw.println("push this " + index);
-        } else {
-            pw.println("push " + segment + " " + index);
-        }
+    void writePop(Segment segment, int index) {
+        put(segment.pop);
+        putLine(index);
     }
 
-    void writePop(String segment, int index) {
-        if (segment.equals("field")) {
-            pw.println("pop this " + index);
-        } else {
-            pw.println("pop " + segment + " " + index);
-        }
-    }
-
-    void writeArithmetic(String command) {
-        pw.println(arithmeticMap.get(command));
+    void writeArithmetic(Command command) {
+        put(command.line);
     }
 
     void writeLabel(String label) {
-        pw.println("label " + label);
+        put(LABEL);
+        putLine(label);
     }
 
     void writeGoto(String label) {
-        pw.println("goto " + label);
+        put(GOTO);
+        putLine(label);
     }
 
     void writeIf(String label) {
-        pw.println("if-goto " + label);
+        put(IF_GOTO);
+        putLine(label);
     }
 
     void writeCall(String name, int nArgs) {
-
-        pw.println("call " + name + " " + nArgs);
+        put(CALL);
+        put(name);
+        put((byte) ' ');
+        putLine(nArgs);
     }
 
     void writeFunction(String name, int nLocals) {
-
-        pw.println("function " + name + " " + nLocals);
+        put(FUNCTION);
+        put(name);
+        put((byte) ' ');
+        putLine(nLocals);
     }
 
     void writeReturn() {
-        pw.println("return");
+        put(RETURN);
     }
 
     void close() {
-        pw.close();
+        if (buf == null) return;
+        try {
+            if (out != null) {
+                write(out);
+            } else {
+                try (FileChannel ch = FileChannel.open(Paths.get(fileName), StandardOpenOption.WRITE,
+                        StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    write(ch);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            buffers.set(buf);
+            buf = null;
+        }
+    }
+
+    private void write(WritableByteChannel ch) throws IOException {
+        ByteBuffer bb = ByteBuffer.wrap(buf, 0, size);
+        while (bb.hasRemaining()) ch.write(bb);
+    }
+
+    private void putLine(int n) {
+        ensure(12);
+        if (n < 0) {
+            buf[size++] = '-';
+            n = -n;
+        }
+        int start = size;
+        do {
+            buf[size++] = (byte) ('0' + n % 10);
+            n /= 10;
+        } while (n != 0);
+        for (int i = start, j = size - 1; i < j; i++, j--) {
+            byte t = buf[i];
+            buf[i] = buf[j];
+            buf[j] = t;
+        }
+        buf[size++] = '\n';
+    }
+
+    private void putLine(String s) {
+        put(s);
+        put((byte) '\n');
+    }
+
+    private void put(String s) {
+        ensure(s.length());
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                put(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+            buf[size++] = (byte) c;
+        }
+    }
+
+    private void put(byte[] b) {
+        ensure(b.length);
+        System.arraycopy(b, 0, buf, size, b.length);
+        size += b.length;
+    }
+
+    private void put(byte b) {
+        ensure(1);
+        buf[size++] = b;
+    }
+
+    private void ensure(int n) {
+        if (size + n > buf.length) {
+            byte[] bigger = new byte[Math.max(buf.length * 2, size + n)];
+            System.arraycopy(buf, 0, bigger, 0, size);
+            buf = bigger;
+        }
     }
 }